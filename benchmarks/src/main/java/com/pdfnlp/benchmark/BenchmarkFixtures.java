@@ -0,0 +1,120 @@
+package com.pdfnlp.benchmark;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfWriter;
+import com.pdfnlp.model.PDFChunk;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible benchmark inputs. Everything is generated from fixed seeds at setup time,
+ * so runs need neither network access nor sample files and are comparable across machines.
+ */
+public final class BenchmarkFixtures {
+    public static final long SEED = 42L;
+
+    private static final String[] ENGLISH_WORDS = {
+        "virtual", "reality", "machine", "learning", "cloud", "computing", "system", "search",
+        "index", "document", "analysis", "network", "security", "database", "performance", "model"
+    };
+
+    private static final String[] KOREAN_WORDS = {
+        "가상현실", "인공지능", "기계학습", "클라우드", "컴퓨팅", "시스템", "검색", "문서",
+        "분석", "데이터", "네트워크", "보안", "성능", "모델", "기술", "개발"
+    };
+
+    private static final String[] KOREAN_PARTICLES = {"", "은", "는", "이", "가", "을", "를", "의", "에서", "으로"};
+
+    private BenchmarkFixtures() {
+    }
+
+    public static String englishText(Random random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            sb.append(ENGLISH_WORDS[random.nextInt(ENGLISH_WORDS.length)]);
+            sb.append(i % 12 == 11 ? ". " : " ");
+        }
+        return sb.toString().trim();
+    }
+
+    public static String koreanText(Random random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            sb.append(KOREAN_WORDS[random.nextInt(KOREAN_WORDS.length)]);
+            sb.append(KOREAN_PARTICLES[random.nextInt(KOREAN_PARTICLES.length)]);
+            sb.append(i % 10 == 9 ? ". " : " ");
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * Chunks of roughly the size PDFProcessor produces, alternating Korean and English text
+     */
+    public static List<PDFChunk> chunks(int count) {
+        Random random = new Random(SEED);
+        List<PDFChunk> chunks = new ArrayList<PDFChunk>(count);
+        for (int i = 0; i < count; i++) {
+            String content = i % 2 == 0 ? koreanText(random, 150) : englishText(random, 150);
+            String fileName = "synthetic-" + (i / 100) + ".pdf";
+            PDFChunk chunk = new PDFChunk(content, i / 10 + 1, fileName, "/synthetic/" + fileName, i % 10);
+            // Later chunks of a page repeat about a fifth of their predecessor, as PDFProcessor's do
+            chunk.setOverlapLength(i % 10 == 0 ? 0 : content.length() / 5);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * Writes an English PDF with the given number of pages of about 350 words each.
+     * The standard PDF fonts have no Hangul glyphs, so Korean text is only benchmarked
+     * after extraction.
+     */
+    public static File writePdf(File file, int pages, long seed) throws IOException {
+        Random random = new Random(seed);
+        Document document = new Document();
+        try {
+            PdfWriter.getInstance(document, new FileOutputStream(file));
+            document.open();
+            for (int page = 0; page < pages; page++) {
+                document.add(new Paragraph(englishText(random, 350)));
+                document.newPage();
+            }
+        } catch (DocumentException e) {
+            throw new IOException("Cannot generate " + file, e);
+        } finally {
+            document.close();
+        }
+        return file;
+    }
+
+    public static void deleteRecursively(File directory) throws IOException {
+        if (directory == null || !directory.exists()) {
+            return;
+        }
+        Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,67 @@
+package com.pdfnlp.benchmark;
+
+import com.pdfnlp.model.PDFChunk;
+import com.pdfnlp.service.ChunkSink;
+import com.pdfnlp.service.PDFProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PDFProcessor.processPDF on generated PDFs of increasing size, without the page text cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PDFExtractionBenchmark {
+    @Param({"1", "10", "100"})
+    public int pages;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    private File fixtureDir;
+    private File pdfFile;
+    private PDFProcessor processor;
+
+    @Setup
+    public void setUp() throws IOException {
+        fixtureDir = Files.createTempDirectory("pdf-extraction-bench").toFile();
+        pdfFile = BenchmarkFixtures.writePdf(new File(fixtureDir, "fixture-" + pages + ".pdf"), pages, BenchmarkFixtures.SEED);
+        processor = new PDFProcessor(workers);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        processor.close();
+        BenchmarkFixtures.deleteRecursively(fixtureDir);
+    }
+
+    @Benchmark
+    public int processPDF(final Blackhole blackhole) throws IOException {
+        return processor.processPDF(pdfFile, new ChunkSink() {
+            @Override
+            public void accept(PDFChunk chunk) {
+                blackhole.consume(chunk);
+            }
+        });
+    }
+}
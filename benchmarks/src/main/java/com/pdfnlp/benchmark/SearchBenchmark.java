@@ -0,0 +1,88 @@
+package com.pdfnlp.benchmark;
+
+import com.pdfnlp.model.SearchHit;
+import com.pdfnlp.model.SearchResult;
+import com.pdfnlp.service.SimplePDFSearchService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end search latency over a synthetic corpus indexed into a temporary directory,
+ * lexical and hybrid (with a semantic index built in setup).
+ * Sample mode reports the p50/p90/p99/p99.9 percentiles next to the mean.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int CORPUS_FILES = 20;
+    private static final int PAGES_PER_FILE = 10;
+    private static final double HYBRID_VECTOR_WEIGHT = 0.5;
+    private static final String[] QUERIES = {
+        "virtual reality",
+        "machine learning cloud",
+        "database security performance",
+        "search index document analysis",
+        "network",
+        "가상현실 기술"
+    };
+
+    @Param({"10", "100"})
+    public int maxResults;
+
+    private File fixtureDir;
+    private SimplePDFSearchService searchService;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws IOException {
+        fixtureDir = Files.createTempDirectory("search-bench").toFile();
+        File corpusDir = new File(fixtureDir, "corpus");
+        corpusDir.mkdirs();
+        for (int i = 0; i < CORPUS_FILES; i++) {
+            BenchmarkFixtures.writePdf(new File(corpusDir, "doc-" + i + ".pdf"), PAGES_PER_FILE, BenchmarkFixtures.SEED + i);
+        }
+
+        searchService = new SimplePDFSearchService(new File(fixtureDir, "index"), 1.0, 0);
+        searchService.indexDirectory(corpusDir, Runtime.getRuntime().availableProcessors(), 0);
+        searchService.buildVectorIndex();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        searchService.close();
+        BenchmarkFixtures.deleteRecursively(fixtureDir);
+    }
+
+    @Benchmark
+    public List<SearchResult> search() throws IOException {
+        String query = QUERIES[(next.getAndIncrement() & Integer.MAX_VALUE) % QUERIES.length];
+        return searchService.search(query, maxResults);
+    }
+
+    @Benchmark
+    public List<SearchHit> hybridSearch() throws IOException {
+        String query = QUERIES[(next.getAndIncrement() & Integer.MAX_VALUE) % QUERIES.length];
+        return searchService.searchHybrid(query, maxResults, HYBRID_VECTOR_WEIGHT);
+    }
+}
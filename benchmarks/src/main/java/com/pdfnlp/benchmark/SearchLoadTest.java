@@ -0,0 +1,84 @@
+package com.pdfnlp.benchmark;
+
+import com.pdfnlp.service.SimplePDFSearchService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures search throughput (QPS) against the existing index for 1, 2, 4 ... N client threads
+ * Usage: java -cp benchmarks.jar com.pdfnlp.benchmark.SearchLoadTest <secondsPerStep> <query> [query ...]
+ */
+public class SearchLoadTest {
+    private static final int MAX_RESULTS = 10;
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: SearchLoadTest <secondsPerStep> <query> [query ...]");
+            return;
+        }
+        long stepMillis = Long.parseLong(args[0]) * 1000L;
+        List<String> queries = Arrays.asList(args).subList(1, args.length);
+        int cores = Runtime.getRuntime().availableProcessors();
+        
+        SimplePDFSearchService searchService = new SimplePDFSearchService();
+        try {
+            System.out.printf("Index contains %d chunks, %d cores available\n",
+                searchService.getIndexedDocumentCount(), cores);
+            
+            // Warm up the JIT and the OS page cache before measuring
+            runStep(searchService, queries, 1, Math.min(stepMillis, 2000L));
+            
+            double baseline = 0;
+            for (int threads = 1; threads <= cores; threads = threads < cores ? Math.min(cores, threads * 2) : threads + 1) {
+                double qps = runStep(searchService, queries, threads, stepMillis);
+                if (threads == 1) {
+                    baseline = qps;
+                }
+                System.out.printf("threads=%-3d qps=%10.1f  scaling=%.2fx\n", threads, qps, qps / baseline);
+            }
+        } finally {
+            searchService.close();
+        }
+    }
+    
+    private static double runStep(final SimplePDFSearchService searchService, final List<String> queries,
+                                  int threads, final long durationMillis) throws InterruptedException {
+        final AtomicLong completed = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long deadline = System.currentTimeMillis() + durationMillis;
+        
+        List<Thread> clients = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            Thread client = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        int i = offset;
+                        while (System.currentTimeMillis() < deadline) {
+                            searchService.search(queries.get(i++ % queries.size()), MAX_RESULTS);
+                            completed.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, "load-client-" + t);
+            clients.add(client);
+            client.start();
+        }
+        
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread client : clients) {
+            client.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+        return completed.get() / elapsedSeconds;
+    }
+}
@@ -0,0 +1,70 @@
+package com.pdfnlp.benchmark;
+
+import com.pdfnlp.service.OpenNLP8TTTTProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * analyzeText and extractKeywords on chunk-sized Korean and English text.
+ * wordCacheSize=0 measures the uncached decomposition path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextAnalysisBenchmark {
+    private static final int TEXT_COUNT = 256;
+
+    @Param({"korean", "english"})
+    public String language;
+
+    @Param({"0", "100000"})
+    public int wordCacheSize;
+
+    private OpenNLP8TTTTProcessor processor;
+    private String[] texts;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        processor = new OpenNLP8TTTTProcessor(wordCacheSize);
+        Random random = new Random(BenchmarkFixtures.SEED);
+        texts = new String[TEXT_COUNT];
+        for (int i = 0; i < TEXT_COUNT; i++) {
+            texts[i] = "korean".equals(language)
+                ? BenchmarkFixtures.koreanText(random, 150)
+                : BenchmarkFixtures.englishText(random, 150);
+        }
+    }
+
+    private String nextText() {
+        String text = texts[next];
+        next = (next + 1) % TEXT_COUNT;
+        return text;
+    }
+
+    @Benchmark
+    public String analyzeText() {
+        return processor.analyzeText(nextText());
+    }
+
+    @Benchmark
+    public List<String> extractKeywords() {
+        return processor.extractKeywords(nextText());
+    }
+}
@@ -0,0 +1,72 @@
+package com.pdfnlp.service;
+
+import com.pdfnlp.benchmark.BenchmarkFixtures;
+import com.pdfnlp.model.PDFChunk;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * createDocument plus addDocument throughput with the production analyzer chain, written
+ * to an in-memory directory so disk speed does not dominate. Lives in the service package
+ * to reach the package-private document and analyzer factories.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IndexingBenchmark {
+    private static final int CHUNK_COUNT = 1000;
+
+    @Param({"STANDARD", "COMPACT", "COMPACT_DEDUPLICATED"})
+    public IndexLayout layout;
+
+    private List<PDFChunk> chunks;
+    private IndexWriter indexWriter;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createChunks() {
+        chunks = BenchmarkFixtures.chunks(CHUNK_COUNT);
+    }
+
+    // A fresh writer per iteration keeps the segment count, and so merge cost, comparable
+    @Setup(Level.Iteration)
+    public void openWriter() throws IOException {
+        IndexWriterConfig config = new IndexWriterConfig(
+            SimplePDFSearchService.createAnalyzer(new OpenNLP8TTTTProcessor()));
+        config.setCodec(SimplePDFSearchService.createCodec(layout));
+        indexWriter = new IndexWriter(new ByteBuffersDirectory(), config);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeWriter() throws IOException {
+        indexWriter.close();
+    }
+
+    @Benchmark
+    public long addDocument() throws IOException {
+        PDFChunk chunk = chunks.get(next);
+        next = (next + 1) % CHUNK_COUNT;
+        return indexWriter.addDocument(SimplePDFSearchService.createDocument(chunk, layout));
+    }
+}
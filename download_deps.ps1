@@ -40,9 +40,6 @@ $deps = @{
     # Lucene Search Engine
     "https://repo1.maven.org/maven2/org/apache/lucene/lucene-core/8.11.2/lucene-core-8.11.2.jar" = "$libDir/lucene-core-8.11.2.jar"
     "https://repo1.maven.org/maven2/org/apache/lucene/lucene-analyzers-common/8.11.2/lucene-analyzers-common-8.11.2.jar" = "$libDir/lucene-analyzers-common-8.11.2.jar"
-    "https://repo1.maven.org/maven2/org/apache/lucene/lucene-queryparser/8.11.2/lucene-queryparser-8.11.2.jar" = "$libDir/lucene-queryparser-8.11.2.jar"
-    "https://repo1.maven.org/maven2/org/apache/lucene/lucene-queries/8.11.2/lucene-queries-8.11.2.jar" = "$libDir/lucene-queries-8.11.2.jar"
-    "https://repo1.maven.org/maven2/org/apache/lucene/lucene-sandbox/8.11.2/lucene-sandbox-8.11.2.jar" = "$libDir/lucene-sandbox-8.11.2.jar"
     
     # JSON Processing
     "https://repo1.maven.org/maven2/com/fasterxml/jackson/core/jackson-databind/2.12.7.1/jackson-databind-2.12.7.1.jar" = "$libDir/jackson-databind-2.12.7.1.jar"
@@ -1,19 +1,55 @@
 package com.pdfnlp;
 
+import com.pdfnlp.server.SearchServer;
+import com.pdfnlp.service.IngestQueue;
 import com.pdfnlp.service.SimplePDFSearchService;
-import com.pdfnlp.model.SearchResult;
+import com.pdfnlp.model.IngestReport;
+import com.pdfnlp.model.SearchHit;
+import com.pdfnlp.model.SearchPage;
+import com.pdfnlp.util.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.Scanner;
 
 public class PDFAISearchApp {
     private static final Logger logger = LoggerFactory.getLogger(PDFAISearchApp.class);
-    private static final String INDEX_DIR = "pdf_index";
+    private static final int DEFAULT_INGEST_WORKERS = Runtime.getRuntime().availableProcessors();
+    private static final int SEARCH_PAGE_SIZE = 10;
+    private static final int SNIPPET_FRAGMENTS = 2;
+    private static final int SNIPPET_FALLBACK_LENGTH = 200;
+    // Weight of semantic similarity against lexical relevance in hybrid search
+    private static final double HYBRID_VECTOR_WEIGHT = 0.5;
+    // Interval of the periodic metrics dump to the log, 0 disables it
+    private static final long METRICS_DUMP_SECONDS = Long.getLong("pdfnlp.metrics.dumpSeconds", 60L);
+    private static final int DEFAULT_SERVER_PORT = 8080;
+    // The server has no authentication: loopback only unless a host is configured
+    private static final String SERVER_HOST = System.getProperty("pdfnlp.server.host");
+    // Only files below this directory are accepted by /ingest
+    private static final String SERVER_INGEST_ROOT = System.getProperty("pdfnlp.server.ingestRoot", ".");
+    private static final int DEFAULT_SERVER_THREADS = 2 * Runtime.getRuntime().availableProcessors();
+    // Server mode leaves most cores to search; files queued beyond the capacity are refused
+    private static final int SERVER_INGEST_WORKERS = Math.max(1, DEFAULT_INGEST_WORKERS / 4);
+    private static final int SERVER_INGEST_CAPACITY = 256;
+    private static final int SERVER_COMMIT_EVERY_FILES = 100;
     
     public static void main(String[] args) {
+        Metrics.startReporter(METRICS_DUMP_SECONDS);
+        
+        if (args.length >= 2 && "--index-dir".equals(args[0])) {
+            runBatchIndex(args);
+            return;
+        }
+        if (args.length >= 1 && "--serve".equals(args[0])) {
+            runServer(args);
+            return;
+        }
+        
         System.out.println("=== PDF AI Search System (TTTT Text Support) ===");
         System.out.println("Performing AI-based search in PDF files.");
         
@@ -30,8 +66,11 @@ public class PDFAISearchApp {
             System.out.println("\n=== Menu ===");
             System.out.println("1. Index PDF File");
             System.out.println("2. Perform Search");
-            System.out.println("3. Exit");
-            System.out.print("Select (1-3): ");
+            System.out.println("3. Index PDF Directory");
+            System.out.println("4. Build Semantic Index");
+            System.out.println("5. Hybrid Search");
+            System.out.println("6. Exit");
+            System.out.print("Select (1-6): ");
             
             String choice = scanner.nextLine().trim();
             
@@ -43,6 +82,15 @@ public class PDFAISearchApp {
                     performSearch(scanner, searchService);
                     break;
                 case "3":
+                    indexDirectory(scanner, searchService);
+                    break;
+                case "4":
+                    buildSemanticIndex(searchService);
+                    break;
+                case "5":
+                    performHybridSearch(scanner, searchService);
+                    break;
+                case "6":
                     System.out.println("Exiting program.");
                     try {
                         searchService.close();
@@ -77,6 +125,114 @@ public class PDFAISearchApp {
         }
     }
     
+    private static void indexDirectory(Scanner scanner, SimplePDFSearchService searchService) {
+        System.out.print("Enter directory path: ");
+        String dirPath = scanner.nextLine().trim();
+        
+        File directory = new File(dirPath);
+        if (!directory.isDirectory()) {
+            System.out.println("Directory not found: " + dirPath);
+            return;
+        }
+        
+        try {
+            System.out.println("Indexing PDF files in directory...");
+            IngestReport report = searchService.indexDirectory(directory, DEFAULT_INGEST_WORKERS, 0);
+            printIngestReport(report);
+        } catch (Exception e) {
+            logger.error("Error occurred during directory indexing", e);
+            System.out.println("Error occurred during indexing: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Non-interactive bulk ingest: --index-dir <directory> [workers] [commitEveryFiles]
+     */
+    private static void runBatchIndex(String[] args) {
+        File directory = new File(args[1]);
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_INGEST_WORKERS;
+        int commitEveryFiles = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        
+        SimplePDFSearchService searchService = null;
+        try {
+            searchService = new SimplePDFSearchService();
+            printIngestReport(searchService.indexDirectory(directory, workers, commitEveryFiles));
+        } catch (Exception e) {
+            logger.error("Error occurred during directory indexing", e);
+            System.out.println("Error occurred during indexing: " + e.getMessage());
+        } finally {
+            if (searchService != null) {
+                try {
+                    searchService.close();
+                } catch (Exception e) {
+                    System.out.println("Error closing search service: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * HTTP/JSON server mode: --serve [port] [requestThreads]. Runs until the process is
+     * stopped; the shutdown hook commits running ingest jobs and closes the index.
+     */
+    private static void runServer(String[] args) {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SERVER_PORT;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SERVER_THREADS;
+        
+        try {
+            final SimplePDFSearchService searchService = new SimplePDFSearchService();
+            final IngestQueue ingestQueue = new IngestQueue(searchService, SERVER_INGEST_WORKERS,
+                SERVER_INGEST_CAPACITY, SERVER_COMMIT_EVERY_FILES);
+            InetSocketAddress address = SERVER_HOST != null
+                ? new InetSocketAddress(SERVER_HOST, port)
+                : new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+            final SearchServer server = new SearchServer(searchService, ingestQueue, new File(SERVER_INGEST_ROOT),
+                address, threads, Runtime.getRuntime().availableProcessors());
+            Runtime.getRuntime().addShutdownHook(new Thread("server-shutdown") {
+                @Override
+                public void run() {
+                    server.close();
+                    try {
+                        ingestQueue.close();
+                        searchService.close();
+                    } catch (IOException e) {
+                        logger.error("Error closing search service", e);
+                    }
+                }
+            });
+            server.start();
+            System.out.println("Search server listening on " + address.getHostString() + ":" + server.getPort()
+                + ", stop with Ctrl+C");
+        } catch (Exception e) {
+            logger.error("Error occurred while starting the search server", e);
+            System.out.println("Failed to start search server: " + e.getMessage());
+        }
+    }
+    
+    private static void printIngestReport(IngestReport report) {
+        System.out.printf("Indexing completed! %d files (%d unchanged, %d failed), %d chunks in %.1fs\n",
+            report.getIndexedFiles(), report.getSkippedFiles(), report.getFailedFiles(), report.getChunkCount(),
+            report.getElapsedMillis() / 1000.0);
+        System.out.printf("Throughput: %.2f files/s, %.1f chunks/s\n",
+            report.getFilesPerSecond(), report.getChunksPerSecond());
+    }
+    
+    /**
+     * Matching fragments of the hit, or the start of its text if it only matched through
+     * the analyzed fields
+     */
+    private static String snippet(SimplePDFSearchService searchService, SearchHit hit, String query) throws IOException {
+        List<String> fragments = searchService.highlight(hit, query, SNIPPET_FRAGMENTS);
+        if (!fragments.isEmpty()) {
+            return String.join(" ... ", fragments);
+        }
+        String content = searchService.loadContent(hit);
+        if (content == null) {
+            return "(no longer indexed)";
+        }
+        return content.length() > SNIPPET_FALLBACK_LENGTH ? content.substring(0, SNIPPET_FALLBACK_LENGTH) + " ..." : content;
+    }
+    
     private static void performSearch(Scanner scanner, SimplePDFSearchService searchService) {
         System.out.print("Enter search query: ");
         String query = scanner.nextLine().trim();
@@ -88,19 +244,81 @@ public class PDFAISearchApp {
         
         try {
             System.out.println("Searching...");
-            List<SearchResult> results = searchService.search(query, 10);
+            SearchPage page = searchService.searchAfter(query, null, SEARCH_PAGE_SIZE);
             
-            if (results.isEmpty()) {
+            if (page.getHits().isEmpty()) {
                 System.out.println("No search results found.");
-            } else {
-                System.out.println("\n=== Search Results ===");
-                for (int i = 0; i < results.size(); i++) {
-                    SearchResult result = results.get(i);
-                    System.out.printf("%d. Score: %.2f, Page: %d\n", 
-                        i + 1, result.getScore(), result.getPageNumber());
-                    System.out.println("Content: " + result.getContent());
+                return;
+            }
+            while (true) {
+                List<SearchHit> hits = page.getHits();
+                System.out.printf("\n=== Search Results (%d-%d of %d) ===\n",
+                    page.getOffset() + 1, page.getOffset() + hits.size(), page.getTotalHits());
+                for (int i = 0; i < hits.size(); i++) {
+                    SearchHit hit = hits.get(i);
+                    System.out.printf("%d. Score: %.2f, File: %s, Page: %d\n", 
+                        page.getOffset() + i + 1, hit.getScore(), hit.getFileName(), hit.getPageNumber());
+                    System.out.println("Content: " + snippet(searchService, hit, query));
                     System.out.println("---");
                 }
+                
+                if (page.getNextCursor() == null) {
+                    break;
+                }
+                System.out.print("Show more results? (y/N): ");
+                if (!"y".equalsIgnoreCase(scanner.nextLine().trim())) {
+                    break;
+                }
+                page = searchService.searchAfter(query, page.getNextCursor(), SEARCH_PAGE_SIZE);
+                if (page.getHits().isEmpty()) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error occurred during search", e);
+            System.out.println("Error occurred during search: " + e.getMessage());
+        }
+    }
+    
+    private static void buildSemanticIndex(SimplePDFSearchService searchService) {
+        try {
+            System.out.println("Building semantic index...");
+            long start = System.currentTimeMillis();
+            int chunks = searchService.buildVectorIndex();
+            System.out.printf("Semantic index built: %d chunks in %.1fs\n", chunks, (System.currentTimeMillis() - start) / 1000.0);
+        } catch (Exception e) {
+            logger.error("Error occurred while building the semantic index", e);
+            System.out.println("Error occurred while building the semantic index: " + e.getMessage());
+        }
+    }
+    
+    private static void performHybridSearch(Scanner scanner, SimplePDFSearchService searchService) {
+        System.out.print("Enter search query: ");
+        String query = scanner.nextLine().trim();
+        
+        if (query.isEmpty()) {
+            System.out.println("Please enter a search query.");
+            return;
+        }
+        if (!searchService.hasVectorIndex()) {
+            System.out.println("No semantic index yet, showing lexical results only (build it with option 4).");
+        }
+        
+        try {
+            System.out.println("Searching...");
+            List<SearchHit> hits = searchService.searchHybrid(query, SEARCH_PAGE_SIZE, HYBRID_VECTOR_WEIGHT);
+            
+            if (hits.isEmpty()) {
+                System.out.println("No search results found.");
+                return;
+            }
+            System.out.println("\n=== Hybrid Search Results ===");
+            for (int i = 0; i < hits.size(); i++) {
+                SearchHit hit = hits.get(i);
+                System.out.printf("%d. Score: %.3f, File: %s, Page: %d\n",
+                    i + 1, hit.getScore(), hit.getFileName(), hit.getPageNumber());
+                System.out.println("Content: " + snippet(searchService, hit, query));
+                System.out.println("---");
             }
         } catch (Exception e) {
             logger.error("Error occurred during search", e);
@@ -0,0 +1,48 @@
+package com.pdfnlp.model;
+
+public class CacheStats {
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private int size;
+    private int capacity;
+    
+    public CacheStats(long hitCount, long missCount, long evictionCount, int size, int capacity) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.capacity = capacity;
+    }
+    
+    public long getHitCount() {
+        return hitCount;
+    }
+    
+    public long getMissCount() {
+        return missCount;
+    }
+    
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+    
+    public int getSize() {
+        return size;
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests > 0 ? (double) hitCount / requests : 0.0;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("CacheStats{hits=%d, misses=%d, hitRate=%.3f, evictions=%d, size=%d/%d}",
+            hitCount, missCount, getHitRate(), evictionCount, size, capacity);
+    }
+}
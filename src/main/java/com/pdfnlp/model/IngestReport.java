@@ -0,0 +1,55 @@
+package com.pdfnlp.model;
+
+public class IngestReport {
+    private int indexedFiles;
+    private int skippedFiles;
+    private int failedFiles;
+    private long chunkCount;
+    private long elapsedMillis;
+    
+    public IngestReport(int indexedFiles, int skippedFiles, int failedFiles, long chunkCount, long elapsedMillis) {
+        this.indexedFiles = indexedFiles;
+        this.skippedFiles = skippedFiles;
+        this.failedFiles = failedFiles;
+        this.chunkCount = chunkCount;
+        this.elapsedMillis = elapsedMillis;
+    }
+    
+    public int getIndexedFiles() {
+        return indexedFiles;
+    }
+    
+    public int getSkippedFiles() {
+        return skippedFiles;
+    }
+    
+    public int getFailedFiles() {
+        return failedFiles;
+    }
+    
+    public long getChunkCount() {
+        return chunkCount;
+    }
+    
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+    
+    public double getFilesPerSecond() {
+        return perSecond(indexedFiles);
+    }
+    
+    public double getChunksPerSecond() {
+        return perSecond(chunkCount);
+    }
+    
+    private double perSecond(long count) {
+        return elapsedMillis > 0 ? count * 1000.0 / elapsedMillis : 0.0;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("IngestReport{indexedFiles=%d, skippedFiles=%d, failedFiles=%d, chunks=%d, elapsed=%dms, files/s=%.2f, chunks/s=%.1f}",
+            indexedFiles, skippedFiles, failedFiles, chunkCount, elapsedMillis, getFilesPerSecond(), getChunksPerSecond());
+    }
+}
@@ -0,0 +1,70 @@
+package com.pdfnlp.model;
+
+public class LatencySnapshot {
+    private String name;
+    private long count;
+    private double meanNanos;
+    private long p50Nanos;
+    private long p90Nanos;
+    private long p99Nanos;
+    private long p999Nanos;
+    private long maxNanos;
+
+    public LatencySnapshot(String name, long count, double meanNanos, long p50Nanos, long p90Nanos,
+                           long p99Nanos, long p999Nanos, long maxNanos) {
+        this.name = name;
+        this.count = count;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMillis() {
+        return meanNanos / 1e6;
+    }
+
+    public double getP50Millis() {
+        return p50Nanos / 1e6;
+    }
+
+    public double getP90Millis() {
+        return p90Nanos / 1e6;
+    }
+
+    public double getP99Millis() {
+        return p99Nanos / 1e6;
+    }
+
+    public double getP999Millis() {
+        return p999Nanos / 1e6;
+    }
+
+    public double getMaxMillis() {
+        return maxNanos / 1e6;
+    }
+
+    /**
+     * Total time spent in this stage, mean times count
+     */
+    public double getTotalSeconds() {
+        return meanNanos * count / 1e9;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-24s count=%-9d total=%9.2fs mean=%9.3fms p50=%9.3fms p90=%9.3fms p99=%9.3fms p99.9=%9.3fms max=%9.3fms",
+            name, count, getTotalSeconds(), getMeanMillis(), getP50Millis(), getP90Millis(),
+            getP99Millis(), getP999Millis(), getMaxMillis());
+    }
+}
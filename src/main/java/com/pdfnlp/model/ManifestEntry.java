@@ -0,0 +1,74 @@
+package com.pdfnlp.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What was indexed for one PDF file: identity, change-detection stamps and per-page hashes
+ */
+public class ManifestEntry {
+    private String filePath;
+    private long size;
+    private long lastModified;
+    private String contentHash;
+    private List<String> pageHashes;
+    
+    public ManifestEntry() {
+        // For JSON deserialization
+        this.pageHashes = new ArrayList<String>();
+    }
+    
+    public ManifestEntry(String filePath, long size, long lastModified, String contentHash, List<String> pageHashes) {
+        this.filePath = filePath;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+        this.pageHashes = pageHashes;
+    }
+    
+    public String getFilePath() {
+        return filePath;
+    }
+    
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    public void setSize(long size) {
+        this.size = size;
+    }
+    
+    public long getLastModified() {
+        return lastModified;
+    }
+    
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+    
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    public List<String> getPageHashes() {
+        return pageHashes;
+    }
+    
+    public void setPageHashes(List<String> pageHashes) {
+        this.pageHashes = pageHashes;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("ManifestEntry{filePath='%s', size=%d, lastModified=%d, contentHash='%s', pages=%d}",
+            filePath, size, lastModified, contentHash, pageHashes.size());
+    }
+}
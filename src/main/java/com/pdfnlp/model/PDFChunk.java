@@ -4,12 +4,19 @@ public class PDFChunk {
     private String content;
     private int pageNumber;
     private String fileName;
+    private String filePath;
     private int chunkIndex;
+    private int overlapLength; // Leading characters repeated from the previous chunk of the page
     
     public PDFChunk(String content, int pageNumber, String fileName, int chunkIndex) {
+        this(content, pageNumber, fileName, fileName, chunkIndex);
+    }
+    
+    public PDFChunk(String content, int pageNumber, String fileName, String filePath, int chunkIndex) {
         this.content = content;
         this.pageNumber = pageNumber;
         this.fileName = fileName;
+        this.filePath = filePath;
         this.chunkIndex = chunkIndex;
     }
     
@@ -37,6 +44,14 @@ public class PDFChunk {
         this.fileName = fileName;
     }
     
+    public String getFilePath() {
+        return filePath;
+    }
+    
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+    
     public int getChunkIndex() {
         return chunkIndex;
     }
@@ -45,6 +60,14 @@ public class PDFChunk {
         this.chunkIndex = chunkIndex;
     }
     
+    public int getOverlapLength() {
+        return overlapLength;
+    }
+    
+    public void setOverlapLength(int overlapLength) {
+        this.overlapLength = overlapLength;
+    }
+    
     @Override
     public String toString() {
         return String.format("PDFChunk{content='%s', pageNumber=%d, fileName='%s', chunkIndex=%d}", 
@@ -0,0 +1,45 @@
+package com.pdfnlp.model;
+
+/**
+ * Position after the last hit of a page, for fetching the next page with searchAfter.
+ * The cursor pins the index snapshot the first page was searched on, so later pages
+ * neither repeat nor skip hits while the index changes, until the snapshot expires.
+ */
+public class SearchCursor {
+    private long readerVersion;
+    private int docId;
+    private float score;
+    private int position;
+    
+    public SearchCursor(long readerVersion, int docId, float score, int position) {
+        this.readerVersion = readerVersion;
+        this.docId = docId;
+        this.score = score;
+        this.position = position;
+    }
+    
+    public long getReaderVersion() {
+        return readerVersion;
+    }
+    
+    public int getDocId() {
+        return docId;
+    }
+    
+    public float getScore() {
+        return score;
+    }
+    
+    /**
+     * Number of hits returned before this cursor
+     */
+    public int getPosition() {
+        return position;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("SearchCursor{readerVersion=%d, docId=%d, score=%.4f, position=%d}",
+            readerVersion, docId, score, position);
+    }
+}
@@ -0,0 +1,62 @@
+package com.pdfnlp.model;
+
+/**
+ * A search hit without its text. The content or highlighted fragments of the chunk are
+ * loaded on demand through the search service; the document id is only valid for the
+ * reader version it came from, the file path, page and chunk index identify the chunk
+ * after the index has changed.
+ */
+public class SearchHit {
+    private int docId;
+    private long readerVersion;
+    private float score;
+    private String fileName;
+    private String filePath;
+    private int pageNumber;
+    private int chunkIndex;
+    
+    public SearchHit(int docId, long readerVersion, float score, String fileName, String filePath,
+                     int pageNumber, int chunkIndex) {
+        this.docId = docId;
+        this.readerVersion = readerVersion;
+        this.score = score;
+        this.fileName = fileName;
+        this.filePath = filePath;
+        this.pageNumber = pageNumber;
+        this.chunkIndex = chunkIndex;
+    }
+    
+    public int getDocId() {
+        return docId;
+    }
+    
+    public long getReaderVersion() {
+        return readerVersion;
+    }
+    
+    public float getScore() {
+        return score;
+    }
+    
+    public String getFileName() {
+        return fileName;
+    }
+    
+    public String getFilePath() {
+        return filePath;
+    }
+    
+    public int getPageNumber() {
+        return pageNumber;
+    }
+    
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("SearchHit{docId=%d, score=%.2f, fileName='%s', pageNumber=%d, chunkIndex=%d}",
+            docId, score, fileName, pageNumber, chunkIndex);
+    }
+}
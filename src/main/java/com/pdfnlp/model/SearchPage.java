@@ -0,0 +1,56 @@
+package com.pdfnlp.model;
+
+import java.util.List;
+
+public class SearchPage {
+    private String query;
+    private int offset;
+    private long totalHits;
+    private List<SearchHit> hits;
+    private SearchCursor nextCursor;
+    
+    public SearchPage(String query, int offset, long totalHits, List<SearchHit> hits) {
+        this(query, offset, totalHits, hits, null);
+    }
+    
+    public SearchPage(String query, int offset, long totalHits, List<SearchHit> hits, SearchCursor nextCursor) {
+        this.query = query;
+        this.offset = offset;
+        this.totalHits = totalHits;
+        this.hits = hits;
+        this.nextCursor = nextCursor;
+    }
+    
+    public String getQuery() {
+        return query;
+    }
+    
+    public int getOffset() {
+        return offset;
+    }
+    
+    public long getTotalHits() {
+        return totalHits;
+    }
+    
+    public List<SearchHit> getHits() {
+        return hits;
+    }
+    
+    public boolean hasMore() {
+        return offset + hits.size() < totalHits;
+    }
+    
+    /**
+     * Cursor for the page after this one, null for offset pages and for the last page
+     */
+    public SearchCursor getNextCursor() {
+        return nextCursor;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("SearchPage{query='%s', offset=%d, hits=%d, totalHits=%d}",
+            query, offset, hits.size(), totalHits);
+    }
+}
@@ -0,0 +1,380 @@
+package com.pdfnlp.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pdfnlp.model.SearchHit;
+import com.pdfnlp.model.SearchPage;
+import com.pdfnlp.service.IngestQueue;
+import com.pdfnlp.service.SimplePDFSearchService;
+import com.pdfnlp.util.Counter;
+import com.pdfnlp.util.LatencyHistogram;
+import com.pdfnlp.util.Metrics;
+import com.pdfnlp.util.NamedThreadFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded HTTP/JSON front end of a SimplePDFSearchService on the JDK HttpServer:
+ *
+ * <pre>
+ * GET  /search?q=...&amp;size=10&amp;snippets=0   hits of one query
+ * POST /search/batch   {"queries": ["...", ...], "size": 10, "snippets": 0}
+ * POST /ingest         {"paths": ["/data/a.pdf", ...]}
+ * GET  /status         indexed chunks and ingest queue depth
+ * GET  /metrics        pipeline counters and latency histograms as text
+ * </pre>
+ *
+ * Requests are handled by a bounded pool. When its threads and queue are full, the thread
+ * accepting connections handles the request itself and stops accepting until it is done.
+ * The queries of a batch are searched in parallel on a separate pool against one searcher
+ * snapshot. Ingest requests are answered once the files are queued, with 503 if the ingest
+ * queue stays full; snippets are cut from the current index after the search.
+ *
+ * There is no authentication, so bind to a loopback address unless the network is trusted.
+ * /ingest only accepts files below the ingest root; paths are resolved with symbolic links
+ * and ".." before they are checked.
+ */
+public class SearchServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SearchServer.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final LatencyHistogram REQUEST_TIME = Metrics.histogram("server.request");
+    private static final Counter FAILED_REQUESTS = Metrics.counter("server.failedRequests");
+    
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_SNIPPETS = 5;
+    private static final int MAX_BATCH_QUERIES = 100;
+    // Requests waiting for a handler thread, per thread
+    private static final int REQUEST_QUEUE_PER_THREAD = 4;
+    private static final long INGEST_QUEUE_WAIT_MILLIS = 1000;
+    
+    private final SimplePDFSearchService searchService;
+    private final IngestQueue ingestQueue;
+    private final File ingestRoot;
+    private final HttpServer httpServer;
+    private final ThreadPoolExecutor requestExecutor;
+    private final ExecutorService queryExecutor;
+    
+    /**
+     * @param ingestQueue     queue of the /ingest endpoint, null to disable it
+     * @param ingestRoot      directory the files of ingest requests must be in; required
+     *                        with an ingest queue
+     * @param requestThreads  threads handling requests
+     * @param queryThreads    threads searching the queries of batch requests
+     */
+    public SearchServer(SimplePDFSearchService searchService, IngestQueue ingestQueue, File ingestRoot,
+                        InetSocketAddress address, int requestThreads, int queryThreads) throws IOException {
+        if (ingestQueue != null && (ingestRoot == null || !ingestRoot.isDirectory())) {
+            throw new IllegalArgumentException("Ingest root is not a directory: " + ingestRoot);
+        }
+        this.searchService = searchService;
+        this.ingestQueue = ingestQueue;
+        this.ingestRoot = ingestRoot != null ? ingestRoot.getCanonicalFile() : null;
+        this.requestExecutor = new ThreadPoolExecutor(requestThreads, requestThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(requestThreads * REQUEST_QUEUE_PER_THREAD),
+            new NamedThreadFactory("http-request"), new ThreadPoolExecutor.CallerRunsPolicy());
+        this.queryExecutor = Executors.newFixedThreadPool(queryThreads, new NamedThreadFactory("batch-search"));
+        
+        this.httpServer = HttpServer.create(address, 0);
+        httpServer.setExecutor(requestExecutor);
+        httpServer.createContext("/search", new JsonHandler("GET") {
+            @Override
+            Object respond(HttpExchange exchange) throws IOException, HttpError {
+                return search(exchange);
+            }
+        });
+        httpServer.createContext("/search/batch", new JsonHandler("POST") {
+            @Override
+            Object respond(HttpExchange exchange) throws IOException, HttpError {
+                return searchBatch(exchange);
+            }
+        });
+        httpServer.createContext("/ingest", new JsonHandler("POST") {
+            @Override
+            Object respond(HttpExchange exchange) throws IOException, HttpError {
+                return ingest(exchange);
+            }
+        });
+        httpServer.createContext("/status", new JsonHandler("GET") {
+            @Override
+            Object respond(HttpExchange exchange) throws IOException, HttpError {
+                return status();
+            }
+        });
+        httpServer.createContext("/metrics", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, 200, "text/plain; charset=utf-8", Metrics.report().getBytes(StandardCharsets.UTF_8));
+            }
+        });
+    }
+    
+    public void start() {
+        httpServer.start();
+        logger.info("Search server listening on {}, ingest root {}", httpServer.getAddress(), ingestRoot);
+    }
+    
+    /**
+     * Port the server listens on, also when it was created with port 0
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+    
+    private Object search(HttpExchange exchange) throws IOException, HttpError {
+        Map<String, String> parameters = queryParameters(exchange);
+        String query = parameters.get("q");
+        if (query == null || query.trim().isEmpty()) {
+            throw new HttpError(400, "Missing query parameter q");
+        }
+        int pageSize = intParameter(parameters.get("size"), "size", DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+        int snippets = intParameter(parameters.get("snippets"), "snippets", 0, MAX_SNIPPETS);
+        
+        SearchPage page = searchService.searchHits(query, 0, pageSize);
+        return pageJson(page, snippets);
+    }
+    
+    private Object searchBatch(HttpExchange exchange) throws IOException, HttpError {
+        JsonNode body = readJson(exchange);
+        JsonNode queryNodes = body.get("queries");
+        if (queryNodes == null || !queryNodes.isArray() || queryNodes.size() == 0) {
+            throw new HttpError(400, "Expected a non-empty array of queries");
+        }
+        if (queryNodes.size() > MAX_BATCH_QUERIES) {
+            throw new HttpError(400, "At most " + MAX_BATCH_QUERIES + " queries per batch");
+        }
+        List<String> queries = new ArrayList<String>(queryNodes.size());
+        for (JsonNode queryNode : queryNodes) {
+            if (!queryNode.isTextual()) {
+                throw new HttpError(400, "Queries must be strings");
+            }
+            queries.add(queryNode.asText());
+        }
+        int pageSize = intParameter(textValue(body, "size"), "size", DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+        int snippets = intParameter(textValue(body, "snippets"), "snippets", 0, MAX_SNIPPETS);
+        
+        List<SearchPage> pages = searchService.searchAll(queries, pageSize, queryExecutor);
+        List<Object> results = new ArrayList<Object>(pages.size());
+        for (SearchPage page : pages) {
+            results.add(pageJson(page, snippets));
+        }
+        return Collections.singletonMap("results", results);
+    }
+    
+    private Object ingest(HttpExchange exchange) throws IOException, HttpError {
+        if (ingestQueue == null) {
+            throw new HttpError(404, "Ingest is not enabled on this server");
+        }
+        JsonNode pathNodes = readJson(exchange).get("paths");
+        if (pathNodes == null || !pathNodes.isArray() || pathNodes.size() == 0) {
+            throw new HttpError(400, "Expected a non-empty array of paths");
+        }
+        // Validate all paths before queueing any of them
+        List<File> pdfFiles = new ArrayList<File>(pathNodes.size());
+        for (JsonNode pathNode : pathNodes) {
+            File pdfFile = new File(pathNode.asText()).getCanonicalFile();
+            if (!pdfFile.toPath().startsWith(ingestRoot.toPath())) {
+                throw new HttpError(403, "Not below the ingest root: " + pathNode.asText());
+            }
+            if (!pdfFile.isFile()) {
+                throw new HttpError(400, "Not a file: " + pathNode.asText());
+            }
+            pdfFiles.add(pdfFile);
+        }
+        
+        int queued = 0;
+        for (File pdfFile : pdfFiles) {
+            if (!ingestQueue.trySubmit(pdfFile, INGEST_QUEUE_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new HttpError(503, "Ingest queue is full, queued " + queued + " of " + pdfFiles.size() + " files");
+            }
+            queued++;
+        }
+        Map<String, Object> response = new LinkedHashMap<String, Object>();
+        response.put("queued", queued);
+        response.put("outstandingJobs", ingestQueue.getOutstandingJobs());
+        return response;
+    }
+    
+    private Object status() throws IOException {
+        Map<String, Object> response = new LinkedHashMap<String, Object>();
+        response.put("indexedChunks", searchService.getIndexedDocumentCount());
+        response.put("semanticIndex", searchService.hasVectorIndex());
+        if (ingestQueue != null) {
+            response.put("queuedJobs", ingestQueue.getQueuedJobs());
+            response.put("outstandingJobs", ingestQueue.getOutstandingJobs());
+        }
+        return response;
+    }
+    
+    private Map<String, Object> pageJson(SearchPage page, int snippets) throws IOException {
+        List<Object> hits = new ArrayList<Object>(page.getHits().size());
+        for (SearchHit hit : page.getHits()) {
+            Map<String, Object> hitJson = new LinkedHashMap<String, Object>();
+            hitJson.put("fileName", hit.getFileName());
+            hitJson.put("filePath", hit.getFilePath());
+            hitJson.put("pageNumber", hit.getPageNumber());
+            hitJson.put("chunkIndex", hit.getChunkIndex());
+            hitJson.put("score", hit.getScore());
+            if (snippets > 0) {
+                hitJson.put("snippets", searchService.highlight(hit, page.getQuery(), snippets));
+            }
+            hits.add(hitJson);
+        }
+        Map<String, Object> pageJson = new LinkedHashMap<String, Object>();
+        pageJson.put("query", page.getQuery());
+        pageJson.put("totalHits", page.getTotalHits());
+        pageJson.put("hits", hits);
+        return pageJson;
+    }
+    
+    private static Map<String, String> queryParameters(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new HashMap<String, String>();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), "UTF-8"),
+                    URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+    
+    private static JsonNode readJson(HttpExchange exchange) throws HttpError {
+        try {
+            JsonNode body = MAPPER.readTree(exchange.getRequestBody());
+            if (body == null || !body.isObject()) {
+                throw new HttpError(400, "Expected a JSON object");
+            }
+            return body;
+        } catch (IOException e) {
+            throw new HttpError(400, "Malformed JSON: " + e.getMessage());
+        }
+    }
+    
+    private static String textValue(JsonNode body, String name) {
+        JsonNode value = body.get(name);
+        return value != null && !value.isNull() ? value.asText() : null;
+    }
+    
+    private static int intParameter(String value, String name, int defaultValue, int max) throws HttpError {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed >= 0 && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new HttpError(400, name + " must be a number from 0 to " + max);
+    }
+    
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Stops accepting requests, waits up to a second for running ones and shuts down the pools
+     */
+    @Override
+    public void close() {
+        httpServer.stop(1);
+        requestExecutor.shutdown();
+        queryExecutor.shutdown();
+    }
+    
+    /**
+     * Answers requests of one method with the JSON serialization of respond()'s result, and
+     * failures with {"error": message}
+     */
+    private abstract static class JsonHandler implements HttpHandler {
+        private final String method;
+        
+        JsonHandler(String method) {
+            this.method = method;
+        }
+        
+        abstract Object respond(HttpExchange exchange) throws IOException, HttpError;
+        
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long start = System.nanoTime();
+            int status = 200;
+            Object response;
+            try {
+                if (!method.equals(exchange.getRequestMethod())) {
+                    throw new HttpError(405, "Use " + method + " for " + exchange.getHttpContext().getPath());
+                }
+                response = respond(exchange);
+            } catch (HttpError e) {
+                status = e.getStatus();
+                response = Collections.singletonMap("error", e.getMessage());
+            } catch (IOException | RuntimeException e) {
+                logger.error("Request failed: {}", exchange.getRequestURI(), e);
+                status = 500;
+                response = Collections.singletonMap("error", String.valueOf(e.getMessage()));
+            }
+            if (status >= 500) {
+                FAILED_REQUESTS.increment();
+            }
+            try {
+                send(exchange, status, "application/json; charset=utf-8", MAPPER.writeValueAsBytes(response));
+            } finally {
+                REQUEST_TIME.recordSince(start);
+            }
+        }
+    }
+    
+    /**
+     * Failure reported to the client with an HTTP status
+     */
+    private static class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+        
+        private final int status;
+        
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+        
+        int getStatus() {
+            return status;
+        }
+    }
+}
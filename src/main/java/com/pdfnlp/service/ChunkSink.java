@@ -0,0 +1,13 @@
+package com.pdfnlp.service;
+
+import com.pdfnlp.model.PDFChunk;
+
+import java.io.IOException;
+
+/**
+ * Receives chunks from PDFProcessor as soon as their page has been extracted
+ * Chunks arrive in page/chunkIndex order and always on the thread that called processPDF
+ */
+public interface ChunkSink {
+    void accept(PDFChunk chunk) throws IOException;
+}
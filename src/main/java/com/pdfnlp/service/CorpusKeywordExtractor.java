@@ -0,0 +1,110 @@
+package com.pdfnlp.service;
+
+import com.pdfnlp.util.TermCounts;
+import org.apache.lucene.index.Term;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks the keywords of a chunk while it is indexed, weighting the in-chunk scores of
+ * OpenNLP8TTTTProcessor.extractKeywords with the inverse document frequency of the term
+ * in the corpus. Terms are lower-cased like those of the field the frequencies are read from.
+ *
+ * Document frequencies are maintained incrementally: the first time a term is seen it is
+ * seeded from the current index snapshot, after which every extracted chunk increments the
+ * frequencies of its distinct terms. Deleted and replaced chunks are not subtracted, so
+ * frequencies of re-indexed files run slightly high until the service is restarted.
+ *
+ * Thread-safe; memory grows with the vocabulary of the chunks indexed since startup.
+ */
+class CorpusKeywordExtractor {
+    private final OpenNLP8TTTTProcessor processor;
+    private final ShardedSearcherManager searcherManager;
+    private final String field;
+    private final int maxKeywords;
+    private final ConcurrentHashMap<String, AtomicInteger> documentFrequencies = new ConcurrentHashMap<String, AtomicInteger>();
+    private final AtomicLong documentCount;
+    
+    /**
+     * @param field       indexed field holding the same terms, used to seed the frequencies
+     * @param maxKeywords keywords kept per chunk
+     */
+    CorpusKeywordExtractor(OpenNLP8TTTTProcessor processor, ShardedSearcherManager searcherManager,
+                           String field, int maxKeywords) throws IOException {
+        this.processor = processor;
+        this.searcherManager = searcherManager;
+        this.field = field;
+        this.maxKeywords = maxKeywords;
+        
+        // Like docFreq, maxDoc still includes deleted chunks
+        ShardedSearcher indexSearcher = searcherManager.acquire();
+        try {
+            this.documentCount = new AtomicLong(indexSearcher.getIndexReader().maxDoc());
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+    }
+    
+    /**
+     * Counts the chunk into the corpus statistics and returns its best keywords
+     *
+     * @return keyword to weight, best first; the best keyword has weight 1
+     */
+    Map<String, Float> extract(String content) throws IOException {
+        TermCounts termCounts = new TermCounts(content.length() / 8);
+        int textLength = processor.countTerms(content, true, termCounts);
+        if (termCounts.size() == 0) {
+            return new LinkedHashMap<String, Float>();
+        }
+        
+        long documents = documentCount.incrementAndGet();
+        double[] scores = processor.calculateIntelligentScores(termCounts, textLength);
+        ShardedSearcher indexSearcher = null;
+        try {
+            for (int ordinal = 0; ordinal < termCounts.size(); ordinal++) {
+                String term = termCounts.term(ordinal);
+                AtomicInteger frequency = documentFrequencies.get(term);
+                if (frequency == null) {
+                    if (indexSearcher == null) {
+                        indexSearcher = searcherManager.acquire();
+                    }
+                    AtomicInteger seeded = new AtomicInteger(indexSearcher.getIndexReader().docFreq(new Term(field, term)));
+                    frequency = documentFrequencies.putIfAbsent(term, seeded);
+                    if (frequency == null) {
+                        frequency = seeded;
+                    }
+                }
+                scores[ordinal] *= idf(frequency.incrementAndGet(), documents);
+            }
+        } finally {
+            if (indexSearcher != null) {
+                searcherManager.release(indexSearcher);
+            }
+        }
+        
+        int[] top = termCounts.top(scores, maxKeywords);
+        double maxScore = scores[top[0]];
+        Map<String, Float> keywords = new LinkedHashMap<String, Float>();
+        if (maxScore <= 0) {
+            return keywords;
+        }
+        for (int ordinal : top) {
+            // Weights are stored as feature values, which must be positive
+            float weight = (float) (scores[ordinal] / maxScore);
+            if (weight >= Float.MIN_NORMAL) {
+                keywords.put(termCounts.term(ordinal), weight);
+            }
+        }
+        return keywords;
+    }
+    
+    // BM25 idf, so keyword weights rank terms like the search scores do
+    private static double idf(long documentFrequency, long documentCount) {
+        return Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+}
@@ -0,0 +1,179 @@
+package com.pdfnlp.service;
+
+import org.apache.lucene.document.Document;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands the documents of one file to IndexWriter.updateDocuments/addDocuments while they are
+ * produced: produce() runs on a thread of the given executor and the writer pulls from a
+ * bounded queue, so at most CAPACITY documents of the file are held in memory. A failure of
+ * produce() is thrown from the iterator, unchecked for an IOException; the writer then drops
+ * every document of the call, the delete term included, and finish() rethrows the original
+ * exception.
+ *
+ * Single use: iterator() always returns the same iterator, started on the first call.
+ */
+abstract class DocumentStream implements Iterable<Document> {
+    private static final int CAPACITY = 64;
+    // How often a blocked producer checks whether the writer has given up
+    private static final long POLL_MILLIS = 100;
+    private static final Object END = new Object();
+    
+    private final ExecutorService executor;
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(CAPACITY);
+    private Future<?> producer;
+    private DocumentIterator iterator;
+    private volatile boolean abandoned;
+    // Written by the producer before it queues END
+    private Throwable failure;
+    private int count;
+    
+    DocumentStream(ExecutorService executor) {
+        this.executor = executor;
+    }
+    
+    /**
+     * Runs on the producer thread; passes each document to put()
+     */
+    protected abstract void produce() throws IOException;
+    
+    /**
+     * Blocks while the queue is full
+     *
+     * @throws InterruptedIOException if the writer has given up on the documents
+     */
+    protected final void put(Document document) throws IOException {
+        try {
+            while (!queue.offer(document, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (abandoned) {
+                    throw new InterruptedIOException("Indexing of the documents was abandoned");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing a document");
+        }
+        count++;
+    }
+    
+    @Override
+    public synchronized Iterator<Document> iterator() {
+        if (iterator == null) {
+            iterator = new DocumentIterator();
+            producer = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        produce();
+                    } catch (Throwable t) {
+                        failure = t;
+                    }
+                    // Blocks only until the writer takes the last document or gives up
+                    try {
+                        while (!queue.offer(END, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                            if (abandoned) {
+                                return;
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        return iterator;
+    }
+    
+    /**
+     * Stops the producer if the writer did not take every document and waits for it. Call
+     * after the writer call, also when it failed.
+     *
+     * @return number of documents produced
+     * @throws IOException the failure of produce() if it ended the stream
+     */
+    int finish() throws IOException {
+        Future<?> started;
+        boolean ended;
+        synchronized (this) {
+            started = producer;
+            ended = iterator != null && iterator.ended;
+        }
+        if (started == null) {
+            return 0;
+        }
+        abandoned = true;
+        try {
+            started.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the document producer");
+        } catch (ExecutionException e) {
+            throw new IOException("Document producer failed", e.getCause());
+        }
+        // A failure after the writer gave up is only the producer noticing that
+        Throwable cause = failure;
+        if (ended && cause != null) {
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+        return count;
+    }
+    
+    private class DocumentIterator implements Iterator<Document> {
+        private Object next;
+        private boolean ended;
+        
+        @Override
+        public boolean hasNext() {
+            if (next == null && !ended) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new InterruptedIOException("Interrupted while waiting for a document"));
+                }
+                if (next == END) {
+                    next = null;
+                    ended = true;
+                }
+            }
+            if (ended && failure != null) {
+                Throwable cause = failure;
+                if (cause instanceof IOException) {
+                    throw new UncheckedIOException("Document production failed", (IOException) cause);
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw (Error) cause;
+            }
+            return next != null;
+        }
+        
+        @Override
+        public Document next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Document document = (Document) next;
+            next = null;
+            return document;
+        }
+    }
+}
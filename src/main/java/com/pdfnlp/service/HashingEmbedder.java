@@ -0,0 +1,345 @@
+package com.pdfnlp.service;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * CPU-only text embedder in the style of latent semantic analysis. Words and character
+ * trigrams of words are hashed into a fixed feature space with signed feature hashing,
+ * weighted by sublinear term frequency and inverse document frequency, and projected onto
+ * the top singular vectors of a sample of the corpus. Words that occur in the same chunks
+ * end up in nearby directions, so chunks can be similar without sharing a word.
+ *
+ * The projection is computed with a randomized SVD (Halko, Martinsson and Tropp), which
+ * only needs the sample in sparse form and an SVD of a small dense matrix.
+ * Immutable after fit or read, and thread-safe.
+ */
+public class HashingEmbedder {
+    private static final int HASH_BITS = 12;
+    private static final int HASH_DIMENSION = 1 << HASH_BITS;
+    private static final int WORD_SEED = 0x5eed;
+    private static final int TRIGRAM_SEED = 0x7219;
+    private static final double TRIGRAM_WEIGHT = 0.5;
+    private static final int MIN_TRIGRAM_WORD_LENGTH = 4;
+    private static final int OVERSAMPLING = 10;
+    private static final int POWER_ITERATIONS = 2;
+    private static final long RANDOM_SEED = 42L;
+    
+    private final Analyzer analyzer;
+    private final String field;
+    private final int dimension;
+    private final float[] idf;
+    // HASH_DIMENSION rows of dimension columns
+    private final float[] projection;
+    
+    private HashingEmbedder(Analyzer analyzer, String field, int dimension, float[] idf, float[] projection) {
+        this.analyzer = analyzer;
+        this.field = field;
+        this.dimension = dimension;
+        this.idf = idf;
+        this.projection = projection;
+    }
+    
+    /**
+     * Learns feature weights and the projection from a sample of chunk texts
+     *
+     * @param field field whose analysis chain tokenizes the text
+     */
+    public static HashingEmbedder fit(Analyzer analyzer, String field, List<String> sample, int dimension) throws IOException {
+        HashingEmbedder unweighted = new HashingEmbedder(analyzer, field, dimension, null, null);
+        int[][] rowIndexes = new int[sample.size()][];
+        double[][] rowValues = new double[sample.size()][];
+        int[] documentFrequency = new int[HASH_DIMENSION];
+        double[] features = new double[HASH_DIMENSION];
+        for (int row = 0; row < sample.size(); row++) {
+            unweighted.hashFeatures(sample.get(row), features);
+            int nonZero = 0;
+            for (double value : features) {
+                if (value != 0) {
+                    nonZero++;
+                }
+            }
+            rowIndexes[row] = new int[nonZero];
+            rowValues[row] = new double[nonZero];
+            int position = 0;
+            for (int i = 0; i < HASH_DIMENSION; i++) {
+                if (features[i] != 0) {
+                    rowIndexes[row][position] = i;
+                    rowValues[row][position++] = features[i];
+                    documentFrequency[i]++;
+                }
+            }
+        }
+        
+        float[] idf = new float[HASH_DIMENSION];
+        for (int i = 0; i < HASH_DIMENSION; i++) {
+            idf[i] = (float) (Math.log((1.0 + sample.size()) / (1.0 + documentFrequency[i])) + 1.0);
+        }
+        // idf-weighted, unit length rows, so long chunks do not dominate the decomposition
+        for (int row = 0; row < sample.size(); row++) {
+            double norm = 0;
+            for (int i = 0; i < rowIndexes[row].length; i++) {
+                rowValues[row][i] *= idf[rowIndexes[row][i]];
+                norm += rowValues[row][i] * rowValues[row][i];
+            }
+            norm = Math.sqrt(norm);
+            for (int i = 0; i < rowValues[row].length && norm > 0; i++) {
+                rowValues[row][i] /= norm;
+            }
+        }
+        
+        float[] projection = new float[HASH_DIMENSION * dimension];
+        if (!sample.isEmpty()) {
+            double[][] topVectors = topRightSingularVectors(rowIndexes, rowValues, dimension);
+            for (int i = 0; i < HASH_DIMENSION; i++) {
+                for (int j = 0; j < topVectors[i].length; j++) {
+                    projection[i * dimension + j] = (float) topVectors[i][j];
+                }
+            }
+        }
+        return new HashingEmbedder(analyzer, field, dimension, idf, projection);
+    }
+    
+    /**
+     * Randomized SVD of the sparse sample matrix X (rows x HASH_DIMENSION)
+     *
+     * @return HASH_DIMENSION rows holding the top right singular vectors of X as columns
+     */
+    private static double[][] topRightSingularVectors(int[][] rowIndexes, double[][] rowValues, int rank) {
+        int rows = rowIndexes.length;
+        int sketchSize = Math.min(rank + OVERSAMPLING, Math.min(rows, HASH_DIMENSION));
+        Random random = new Random(RANDOM_SEED);
+        
+        double[][] omega = new double[HASH_DIMENSION][sketchSize];
+        for (double[] omegaRow : omega) {
+            for (int j = 0; j < sketchSize; j++) {
+                omegaRow[j] = random.nextGaussian();
+            }
+        }
+        // Range of X from Y = X * omega, sharpened by power iterations Y = X * (X^T * Y)
+        double[][] y = multiply(rowIndexes, rowValues, omega, sketchSize);
+        for (int iteration = 0; iteration < POWER_ITERATIONS; iteration++) {
+            orthonormalizeColumns(y);
+            double[][] z = multiplyTransposed(rowIndexes, rowValues, y, sketchSize);
+            orthonormalizeColumns(z);
+            y = multiply(rowIndexes, rowValues, z, sketchSize);
+        }
+        orthonormalizeColumns(y);
+        
+        // B = Q^T * X is small (sketchSize x HASH_DIMENSION); X's right singular vectors are B's
+        double[][] b = new double[sketchSize][HASH_DIMENSION];
+        for (int row = 0; row < rows; row++) {
+            for (int i = 0; i < rowIndexes[row].length; i++) {
+                int column = rowIndexes[row][i];
+                double value = rowValues[row][i];
+                for (int j = 0; j < sketchSize; j++) {
+                    b[j][column] += y[row][j] * value;
+                }
+            }
+        }
+        RealMatrix v = new SingularValueDecomposition(new Array2DRowRealMatrix(b, false)).getV();
+        int columns = Math.min(rank, v.getColumnDimension());
+        double[][] top = new double[HASH_DIMENSION][];
+        for (int i = 0; i < HASH_DIMENSION; i++) {
+            top[i] = Arrays.copyOf(v.getRow(i), columns);
+        }
+        return top;
+    }
+    
+    // X * m for m with HASH_DIMENSION rows
+    private static double[][] multiply(int[][] rowIndexes, double[][] rowValues, double[][] m, int columns) {
+        double[][] result = new double[rowIndexes.length][columns];
+        for (int row = 0; row < rowIndexes.length; row++) {
+            for (int i = 0; i < rowIndexes[row].length; i++) {
+                double[] mRow = m[rowIndexes[row][i]];
+                double value = rowValues[row][i];
+                for (int j = 0; j < columns; j++) {
+                    result[row][j] += value * mRow[j];
+                }
+            }
+        }
+        return result;
+    }
+    
+    // X^T * m for m with one row per sample row
+    private static double[][] multiplyTransposed(int[][] rowIndexes, double[][] rowValues, double[][] m, int columns) {
+        double[][] result = new double[HASH_DIMENSION][columns];
+        for (int row = 0; row < rowIndexes.length; row++) {
+            for (int i = 0; i < rowIndexes[row].length; i++) {
+                double[] resultRow = result[rowIndexes[row][i]];
+                double value = rowValues[row][i];
+                for (int j = 0; j < columns; j++) {
+                    resultRow[j] += value * m[row][j];
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Modified Gram-Schmidt; columns that are (numerically) dependent on earlier ones become zero
+     */
+    private static void orthonormalizeColumns(double[][] m) {
+        int columns = m.length > 0 ? m[0].length : 0;
+        for (int j = 0; j < columns; j++) {
+            for (int k = 0; k < j; k++) {
+                double dot = 0;
+                for (double[] row : m) {
+                    dot += row[j] * row[k];
+                }
+                for (double[] row : m) {
+                    row[j] -= dot * row[k];
+                }
+            }
+            double norm = 0;
+            for (double[] row : m) {
+                norm += row[j] * row[j];
+            }
+            norm = Math.sqrt(norm);
+            for (double[] row : m) {
+                row[j] = norm > 1e-10 ? row[j] / norm : 0;
+            }
+        }
+    }
+    
+    /**
+     * Unit-length embedding of the text; all zero if none of its features are known
+     */
+    public float[] embed(String text) throws IOException {
+        double[] features = new double[HASH_DIMENSION];
+        hashFeatures(text, features);
+        
+        double[] embedding = new double[dimension];
+        for (int i = 0; i < HASH_DIMENSION; i++) {
+            if (features[i] == 0) {
+                continue;
+            }
+            double value = features[i] * idf[i];
+            int offset = i * dimension;
+            for (int j = 0; j < dimension; j++) {
+                embedding[j] += value * projection[offset + j];
+            }
+        }
+        
+        double norm = 0;
+        for (double value : embedding) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] result = new float[dimension];
+        for (int j = 0; j < dimension && norm > 0; j++) {
+            result[j] = (float) (embedding[j] / norm);
+        }
+        return result;
+    }
+    
+    /**
+     * Signed, sublinear term frequencies of the words and word trigrams of the text
+     */
+    private void hashFeatures(String text, double[] features) throws IOException {
+        Arrays.fill(features, 0);
+        int[] wordHashes = new int[64];
+        int words = 0;
+        int[] trigramHashes = new int[256];
+        int trigrams = 0;
+        
+        TokenStream tokenStream = analyzer.tokenStream(field, text);
+        try {
+            CharTermAttribute termAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                String word = termAttribute.toString();
+                if (words == wordHashes.length) {
+                    wordHashes = Arrays.copyOf(wordHashes, words * 2);
+                }
+                wordHashes[words++] = hash(word, WORD_SEED);
+                
+                if (word.length() >= MIN_TRIGRAM_WORD_LENGTH) {
+                    // Trigrams of "<word>" relate inflected forms of the same stem
+                    String bounded = "<" + word + ">";
+                    for (int i = 0; i + 3 <= bounded.length(); i++) {
+                        if (trigrams == trigramHashes.length) {
+                            trigramHashes = Arrays.copyOf(trigramHashes, trigrams * 2);
+                        }
+                        trigramHashes[trigrams++] = hash(bounded.substring(i, i + 3), TRIGRAM_SEED);
+                    }
+                }
+            }
+            tokenStream.end();
+        } finally {
+            tokenStream.close();
+        }
+        
+        addFeatures(wordHashes, words, 1.0, features);
+        addFeatures(trigramHashes, trigrams, TRIGRAM_WEIGHT, features);
+    }
+    
+    private static int hash(String feature, int seed) {
+        byte[] bytes = feature.getBytes(StandardCharsets.UTF_8);
+        return StringHelper.murmurhash3_x86_32(bytes, 0, bytes.length, seed);
+    }
+    
+    /**
+     * The low bits of a hash select the feature, the top bit its sign, so collisions
+     * cancel out on average instead of adding up
+     */
+    private static void addFeatures(int[] hashes, int count, double weight, double[] features) {
+        Arrays.sort(hashes, 0, count);
+        int i = 0;
+        while (i < count) {
+            int hash = hashes[i];
+            int frequency = 0;
+            while (i < count && hashes[i] == hash) {
+                frequency++;
+                i++;
+            }
+            double sign = hash < 0 ? -1.0 : 1.0;
+            features[hash & (HASH_DIMENSION - 1)] += sign * weight * (1.0 + Math.log(frequency));
+        }
+    }
+    
+    public int getDimension() {
+        return dimension;
+    }
+    
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(HASH_DIMENSION);
+        out.writeInt(dimension);
+        for (float value : idf) {
+            out.writeFloat(value);
+        }
+        for (float value : projection) {
+            out.writeFloat(value);
+        }
+    }
+    
+    public static HashingEmbedder readFrom(DataInput in, Analyzer analyzer, String field) throws IOException {
+        int hashDimension = in.readInt();
+        if (hashDimension != HASH_DIMENSION) {
+            throw new IOException("Embedder was written with " + hashDimension + " hash features, expected " + HASH_DIMENSION);
+        }
+        int dimension = in.readInt();
+        float[] idf = new float[HASH_DIMENSION];
+        for (int i = 0; i < idf.length; i++) {
+            idf[i] = in.readFloat();
+        }
+        float[] projection = new float[HASH_DIMENSION * dimension];
+        for (int i = 0; i < projection.length; i++) {
+            projection[i] = in.readFloat();
+        }
+        return new HashingEmbedder(analyzer, field, dimension, idf, projection);
+    }
+}
@@ -0,0 +1,101 @@
+package com.pdfnlp.service;
+
+import com.pdfnlp.model.SearchHit;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams every hit of a query in score order, fetching batchSize hits at a time with
+ * searchAfter, so memory use does not grow with the number of matches. All batches are
+ * searched on the snapshot that was current when the stream was opened; the snapshot is
+ * held until the stream is closed or exhausted, so close it when stopping early.
+ *
+ * Not thread-safe; use one stream per consumer.
+ */
+public class HitIterator implements Iterator<SearchHit>, Closeable {
+    private final SimplePDFSearchService searchService;
+    private final ShardedSearcherManager searcherManager;
+    private final Query query;
+    private final int batchSize;
+    private final long readerVersion;
+    
+    private ShardedSearcher indexSearcher;
+    private ScoreDoc[] batch = new ScoreDoc[0];
+    private int batchPosition;
+    private ScoreDoc after;
+    private boolean lastBatch;
+    
+    HitIterator(SimplePDFSearchService searchService, ShardedSearcherManager searcherManager, ShardedSearcher indexSearcher,
+                long readerVersion, Query query, int batchSize) {
+        this.searchService = searchService;
+        this.searcherManager = searcherManager;
+        this.indexSearcher = indexSearcher;
+        this.readerVersion = readerVersion;
+        this.query = query;
+        this.batchSize = batchSize;
+    }
+    
+    @Override
+    public boolean hasNext() {
+        if (batchPosition < batch.length) {
+            return true;
+        }
+        if (lastBatch || indexSearcher == null) {
+            close();
+            return false;
+        }
+        try {
+            TopDocs topDocs = searchService.searchBatch(indexSearcher, query, after, batchSize);
+            batch = topDocs.scoreDocs;
+            batchPosition = 0;
+            lastBatch = batch.length < batchSize;
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Failed to fetch the next batch of hits", e);
+        }
+        if (batch.length == 0) {
+            close();
+            return false;
+        }
+        after = batch[batch.length - 1];
+        return true;
+    }
+    
+    @Override
+    public SearchHit next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return searchService.createHit(indexSearcher, batch[batchPosition++], readerVersion);
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Failed to load hit fields", e);
+        }
+    }
+    
+    /**
+     * Releases the index snapshot; idempotent
+     */
+    @Override
+    public void close() {
+        if (indexSearcher == null) {
+            return;
+        }
+        ShardedSearcher released = indexSearcher;
+        indexSearcher = null;
+        batch = new ScoreDoc[0];
+        try {
+            searcherManager.release(released);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to release searcher", e);
+        }
+    }
+}
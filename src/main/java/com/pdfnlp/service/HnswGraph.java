@@ -0,0 +1,442 @@
+package com.pdfnlp.service;
+
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.SparseFixedBitSet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Hierarchical navigable small world graph (Malkov and Yashunin) over unit-length float
+ * vectors, scored by dot product, i.e. cosine similarity. Every node is linked to up to
+ * 2 * maxConnections neighbours on the bottom layer and maxConnections on each of the
+ * exponentially sparser layers above; a search descends greedily through the upper layers
+ * and then runs a best-first search of width ef on the bottom one.
+ *
+ * Nodes are added by a single thread; once built, searches may run concurrently.
+ */
+public class HnswGraph {
+    private static final long RANDOM_SEED = 42L;
+    
+    private final int dimension;
+    private final int maxConnections;
+    private final int beamWidth;
+    private final double levelMultiplier;
+    private final Random random = new Random(RANDOM_SEED);
+    
+    private int size;
+    private float[] vectors;
+    private int[] levels;
+    // Bottom layer: per node a neighbour count followed by 2 * maxConnections slots
+    private int[] bottomLayer;
+    // Upper layers: per node and level, a neighbour count followed by maxConnections slots
+    private int[][][] upperLayers;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    
+    /**
+     * @param maxConnections neighbours kept per node on the upper layers, twice that on the bottom layer
+     * @param beamWidth      candidates considered when linking a new node
+     */
+    public HnswGraph(int dimension, int maxConnections, int beamWidth) {
+        this.dimension = dimension;
+        this.maxConnections = maxConnections;
+        this.beamWidth = beamWidth;
+        this.levelMultiplier = 1 / Math.log(maxConnections);
+        this.vectors = new float[16 * dimension];
+        this.levels = new int[16];
+        this.bottomLayer = new int[16 * (2 * maxConnections + 1)];
+        this.upperLayers = new int[16][][];
+    }
+    
+    /**
+     * @return node id of the vector, which is the number of nodes added before it
+     */
+    public int add(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Vector has " + vector.length + " dimensions, expected " + dimension);
+        }
+        int node = size;
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        grow(node + 1);
+        System.arraycopy(vector, 0, vectors, node * dimension, dimension);
+        levels[node] = level;
+        if (level > 0) {
+            upperLayers[node] = new int[level][maxConnections + 1];
+        }
+        size++;
+        
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+        
+        int[] entryPoints = {entryPoint};
+        for (int layer = maxLevel; layer > level; layer--) {
+            entryPoints = searchLayer(vectors, node * dimension, entryPoints, 1, layer).nodesBestFirst();
+        }
+        for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+            NodeQueue candidates = searchLayer(vectors, node * dimension, entryPoints, beamWidth, layer);
+            int[] nearest = candidates.nodesBestFirst();
+            int[] neighbours = selectNeighbours(node, nearest, capacity(layer));
+            setNeighbours(node, layer, neighbours, neighbours.length);
+            for (int neighbour : neighbours) {
+                link(neighbour, node, layer);
+            }
+            entryPoints = nearest;
+        }
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+        return node;
+    }
+    
+    /**
+     * @param ef width of the bottom layer search, at least k; larger values trade speed for recall
+     * @return up to k nodes and their similarities, most similar first
+     */
+    public Neighbours search(float[] query, int k, int ef) {
+        if (entryPoint < 0 || k <= 0) {
+            return new Neighbours(new int[0], new float[0]);
+        }
+        int[] entryPoints = {entryPoint};
+        for (int layer = maxLevel; layer > 0; layer--) {
+            entryPoints = searchLayer(query, 0, entryPoints, 1, layer).nodesBestFirst();
+        }
+        NodeQueue results = searchLayer(query, 0, entryPoints, Math.max(ef, k), 0);
+        while (results.size() > k) {
+            results.pop();
+        }
+        int count = results.size();
+        int[] nodes = new int[count];
+        float[] scores = new float[count];
+        for (int i = count - 1; i >= 0; i--) {
+            long top = results.pop();
+            nodes[i] = NodeQueue.node(top);
+            scores[i] = NodeQueue.score(top);
+        }
+        return new Neighbours(nodes, scores);
+    }
+    
+    /**
+     * Best-first search of one layer
+     *
+     * @return min-queue of the ef most similar nodes found
+     */
+    private NodeQueue searchLayer(float[] query, int queryOffset, int[] entryPoints, int ef, int layer) {
+        // A search touches a small fraction of the nodes; a sparse set is cheap to allocate per layer
+        SparseFixedBitSet visited = new SparseFixedBitSet(size);
+        NodeQueue results = new NodeQueue(ef + 1);
+        // Best candidate first: scores are negated in a min-queue
+        NodeQueue candidates = new NodeQueue(ef + 1);
+        for (int entry : entryPoints) {
+            if (!visited.get(entry)) {
+                visited.set(entry);
+                float score = similarity(query, queryOffset, entry);
+                results.push(entry, score);
+                candidates.push(entry, -score);
+                if (results.size() > ef) {
+                    results.pop();
+                }
+            }
+        }
+        
+        while (candidates.size() > 0) {
+            long best = candidates.pop();
+            if (results.size() >= ef && -NodeQueue.score(best) < NodeQueue.score(results.top())) {
+                break;
+            }
+            int[] neighbours = neighbourArray(NodeQueue.node(best), layer);
+            int offset = neighbourOffset(NodeQueue.node(best), layer);
+            for (int i = 1; i <= neighbours[offset]; i++) {
+                int neighbour = neighbours[offset + i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float score = similarity(query, queryOffset, neighbour);
+                if (results.size() < ef || score > NodeQueue.score(results.top())) {
+                    candidates.push(neighbour, -score);
+                    results.push(neighbour, score);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Keeps a candidate only if it is more similar to the node than to every neighbour
+     * already selected, so links point in diverse directions and clusters stay connected
+     *
+     * @param candidates most similar first
+     */
+    private int[] selectNeighbours(int node, int[] candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.length)];
+        int count = 0;
+        for (int candidate : candidates) {
+            if (count == selected.length) {
+                break;
+            }
+            if (candidate == node) {
+                continue;
+            }
+            float score = similarity(vectors, node * dimension, candidate);
+            boolean diverse = true;
+            for (int i = 0; i < count && diverse; i++) {
+                diverse = similarity(vectors, candidate * dimension, selected[i]) <= score;
+            }
+            if (diverse) {
+                selected[count++] = candidate;
+            }
+        }
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+    
+    private void link(int node, int neighbour, int layer) {
+        int[] neighbours = neighbourArray(node, layer);
+        int offset = neighbourOffset(node, layer);
+        int count = neighbours[offset];
+        int capacity = capacity(layer);
+        if (count < capacity) {
+            neighbours[offset + 1 + count] = neighbour;
+            neighbours[offset] = count + 1;
+            return;
+        }
+        
+        // Full: reselect among the current neighbours and the new one
+        NodeQueue queue = new NodeQueue(capacity + 1);
+        int base = node * dimension;
+        for (int i = 1; i <= count; i++) {
+            int current = neighbours[offset + i];
+            queue.push(current, similarity(vectors, base, current));
+        }
+        queue.push(neighbour, similarity(vectors, base, neighbour));
+        int[] selected = selectNeighbours(node, queue.nodesBestFirst(), capacity);
+        setNeighbours(node, layer, selected, selected.length);
+    }
+    
+    private void setNeighbours(int node, int layer, int[] neighbours, int count) {
+        int[] target = neighbourArray(node, layer);
+        int offset = neighbourOffset(node, layer);
+        target[offset] = count;
+        System.arraycopy(neighbours, 0, target, offset + 1, count);
+    }
+    
+    private int[] neighbourArray(int node, int layer) {
+        return layer == 0 ? bottomLayer : upperLayers[node][layer - 1];
+    }
+    
+    private int neighbourOffset(int node, int layer) {
+        return layer == 0 ? node * (2 * maxConnections + 1) : 0;
+    }
+    
+    private int capacity(int layer) {
+        return layer == 0 ? 2 * maxConnections : maxConnections;
+    }
+    
+    private float similarity(float[] query, int queryOffset, int node) {
+        int offset = node * dimension;
+        float dot = 0;
+        for (int i = 0; i < dimension; i++) {
+            dot += query[queryOffset + i] * vectors[offset + i];
+        }
+        return dot;
+    }
+    
+    private void grow(int minSize) {
+        if (minSize <= levels.length) {
+            return;
+        }
+        int capacity = Math.max(minSize, levels.length + (levels.length >> 1));
+        vectors = Arrays.copyOf(vectors, capacity * dimension);
+        levels = Arrays.copyOf(levels, capacity);
+        bottomLayer = Arrays.copyOf(bottomLayer, capacity * (2 * maxConnections + 1));
+        upperLayers = Arrays.copyOf(upperLayers, capacity);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public int getDimension() {
+        return dimension;
+    }
+    
+    public float[] vector(int node) {
+        return Arrays.copyOfRange(vectors, node * dimension, (node + 1) * dimension);
+    }
+    
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(dimension);
+        out.writeInt(maxConnections);
+        out.writeInt(beamWidth);
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+        for (int i = 0; i < size * dimension; i++) {
+            out.writeFloat(vectors[i]);
+        }
+        int stride = 2 * maxConnections + 1;
+        for (int node = 0; node < size; node++) {
+            out.writeByte(levels[node]);
+            writeNeighbours(out, bottomLayer, node * stride);
+            for (int layer = 0; layer < levels[node]; layer++) {
+                writeNeighbours(out, upperLayers[node][layer], 0);
+            }
+        }
+    }
+    
+    private static void writeNeighbours(DataOutput out, int[] neighbours, int offset) throws IOException {
+        out.writeShort(neighbours[offset]);
+        for (int i = 1; i <= neighbours[offset]; i++) {
+            out.writeInt(neighbours[offset + i]);
+        }
+    }
+    
+    public static HnswGraph readFrom(DataInput in) throws IOException {
+        HnswGraph graph = new HnswGraph(in.readInt(), in.readInt(), in.readInt());
+        int size = in.readInt();
+        graph.grow(size);
+        graph.size = size;
+        graph.entryPoint = in.readInt();
+        graph.maxLevel = in.readInt();
+        for (int i = 0; i < size * graph.dimension; i++) {
+            graph.vectors[i] = in.readFloat();
+        }
+        int stride = 2 * graph.maxConnections + 1;
+        for (int node = 0; node < size; node++) {
+            int level = in.readByte();
+            graph.levels[node] = level;
+            readNeighbours(in, graph.bottomLayer, node * stride);
+            if (level > 0) {
+                graph.upperLayers[node] = new int[level][graph.maxConnections + 1];
+                for (int layer = 0; layer < level; layer++) {
+                    readNeighbours(in, graph.upperLayers[node][layer], 0);
+                }
+            }
+        }
+        return graph;
+    }
+    
+    private static void readNeighbours(DataInput in, int[] neighbours, int offset) throws IOException {
+        int count = in.readShort();
+        neighbours[offset] = count;
+        for (int i = 1; i <= count; i++) {
+            neighbours[offset + i] = in.readInt();
+        }
+    }
+    
+    /**
+     * Search result: node ids and similarities, most similar first
+     */
+    public static class Neighbours {
+        private final int[] nodes;
+        private final float[] scores;
+        
+        Neighbours(int[] nodes, float[] scores) {
+            this.nodes = nodes;
+            this.scores = scores;
+        }
+        
+        public int size() {
+            return nodes.length;
+        }
+        
+        public int node(int i) {
+            return nodes[i];
+        }
+        
+        public float score(int i) {
+            return scores[i];
+        }
+    }
+    
+    /**
+     * Binary min-heap of (score, node) pairs packed into longs, score in the high bits
+     * in sortable form, so the heap needs no objects per entry
+     */
+    private static class NodeQueue {
+        private long[] heap;
+        private int size;
+        
+        NodeQueue(int initialCapacity) {
+            heap = new long[Math.max(initialCapacity, 1)];
+        }
+        
+        static int node(long entry) {
+            return (int) entry;
+        }
+        
+        static float score(long entry) {
+            return NumericUtils.sortableIntToFloat((int) (entry >> 32));
+        }
+        
+        void push(int node, float score) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            long entry = ((long) NumericUtils.floatToSortableInt(score) << 32) | (node & 0xFFFFFFFFL);
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= entry) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = entry;
+        }
+        
+        long top() {
+            return heap[0];
+        }
+        
+        long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= last) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top;
+        }
+        
+        int size() {
+            return size;
+        }
+        
+        /**
+         * Empties the queue
+         *
+         * @return its nodes, highest score first
+         */
+        int[] nodesBestFirst() {
+            int[] nodes = new int[size];
+            for (int i = nodes.length - 1; i >= 0; i--) {
+                nodes[i] = node(pop());
+            }
+            return nodes;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.pdfnlp.service;
+
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Index storage and IndexWriter tuning. load() starts from the defaults, applies the
+ * properties file named by -Dpdfnlp.config (or ./pdfnlp.properties if present) and then
+ * any "pdfnlp.*" system properties, so single settings can be overridden per run:
+ *
+ * <pre>
+ * pdfnlp.index.dir                 index directory (target/index)
+ * pdfnlp.index.directory           mmap, nio or auto (mmap)
+ * pdfnlp.index.shards              shards of a new index, routed by file name (1)
+ * pdfnlp.index.ramBufferMB         indexing buffer before a segment is flushed, all shards (64)
+ * pdfnlp.index.mergePolicy         tiered or logByteSize (tiered)
+ * pdfnlp.index.segmentsPerTier     tiered: segments per tier before merging (10)
+ * pdfnlp.index.maxMergedSegmentMB  tiered: largest segment produced by merges (5120)
+ * pdfnlp.index.mergeFactor         logByteSize: segments merged at once (10)
+ * pdfnlp.index.mergeThreads        merge threads per shard, -1 = by core count and disk (-1)
+ * pdfnlp.index.maxMergeCount       merges queued before indexing stalls, -1 = automatic (-1)
+ * pdfnlp.index.bulk.enabled        use the bulk profile while a directory is indexed (true)
+ * pdfnlp.index.bulk.ramBufferMB    bulk profile: indexing buffer, all shards (256)
+ * pdfnlp.index.bulk.segmentsPerTier bulk profile, tiered: segments per tier (50)
+ * pdfnlp.search.threads            threads searching segments of one query, 0 = caller (0)
+ * pdfnlp.search.maxStaleSeconds    how long new chunks may stay invisible to search (1.0)
+ * pdfnlp.vector.dimension          dimensions of the chunk embeddings of the semantic index (128)
+ * pdfnlp.vector.sampleSize         chunks the embedding is fitted on (10000)
+ * pdfnlp.vector.maxConnections     graph links per chunk, at least 2, twice that on the bottom layer (16)
+ * pdfnlp.vector.beamWidth          candidates considered when linking a chunk into the graph (100)
+ * pdfnlp.vector.efSearch           candidates considered per vector search (64)
+ * </pre>
+ *
+ * The bulk profile also turns off merge IO throttling; all of it is reverted and pending
+ * merges are started once the directory has been indexed.
+ */
+public class IndexConfig {
+    private static final Logger logger = LoggerFactory.getLogger(IndexConfig.class);
+    private static final String PREFIX = "pdfnlp.";
+    private static final String CONFIG_FILE_PROPERTY = "pdfnlp.config";
+    private static final String DEFAULT_CONFIG_FILE = "pdfnlp.properties";
+    
+    public enum DirectoryType {
+        MMAP, NIO, AUTO
+    }
+    
+    public enum MergePolicyType {
+        TIERED, LOG_BYTE_SIZE
+    }
+    
+    private final File indexDir;
+    private final DirectoryType directoryType;
+    private final int shardCount;
+    private final double ramBufferMB;
+    private final MergePolicyType mergePolicyType;
+    private final double segmentsPerTier;
+    private final double maxMergedSegmentMB;
+    private final int mergeFactor;
+    private final int mergeThreads;
+    private final int maxMergeCount;
+    private final boolean bulkProfile;
+    private final double bulkRamBufferMB;
+    private final double bulkSegmentsPerTier;
+    private final int searchThreads;
+    private final double maxStaleSeconds;
+    private final int vectorDimension;
+    private final int vectorSampleSize;
+    private final int vectorMaxConnections;
+    private final int vectorBeamWidth;
+    private final int vectorEfSearch;
+    
+    private IndexConfig(Properties properties) {
+        this.indexDir = new File(properties.getProperty("index.dir", "target/index"));
+        this.directoryType = DirectoryType.valueOf(upperEnumName(properties, "index.directory", "mmap"));
+        this.shardCount = positiveInt(properties, "index.shards", 1);
+        this.ramBufferMB = positiveDouble(properties, "index.ramBufferMB", 64.0);
+        this.mergePolicyType = MergePolicyType.valueOf(upperEnumName(properties, "index.mergePolicy", "tiered"));
+        this.segmentsPerTier = positiveDouble(properties, "index.segmentsPerTier", 10.0);
+        this.maxMergedSegmentMB = positiveDouble(properties, "index.maxMergedSegmentMB", 5120.0);
+        this.mergeFactor = positiveInt(properties, "index.mergeFactor", 10);
+        this.mergeThreads = Integer.parseInt(properties.getProperty("index.mergeThreads", "-1").trim());
+        this.maxMergeCount = Integer.parseInt(properties.getProperty("index.maxMergeCount", "-1").trim());
+        this.bulkProfile = Boolean.parseBoolean(properties.getProperty("index.bulk.enabled", "true").trim());
+        this.bulkRamBufferMB = positiveDouble(properties, "index.bulk.ramBufferMB", 256.0);
+        this.bulkSegmentsPerTier = positiveDouble(properties, "index.bulk.segmentsPerTier", 50.0);
+        this.searchThreads = Integer.parseInt(properties.getProperty("search.threads", "0").trim());
+        this.maxStaleSeconds = positiveDouble(properties, "search.maxStaleSeconds", 1.0);
+        this.vectorDimension = positiveInt(properties, "vector.dimension", 128);
+        this.vectorSampleSize = positiveInt(properties, "vector.sampleSize", 10000);
+        this.vectorMaxConnections = positiveInt(properties, "vector.maxConnections", 16);
+        this.vectorBeamWidth = positiveInt(properties, "vector.beamWidth", 100);
+        this.vectorEfSearch = positiveInt(properties, "vector.efSearch", 64);
+        
+        if (vectorMaxConnections < 2) {
+            // The HNSW level distribution is 1 / ln(maxConnections)
+            throw new IllegalArgumentException(PREFIX + "vector.maxConnections must be at least 2: " + vectorMaxConnections);
+        }
+        if ((mergeThreads == ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS)
+            != (maxMergeCount == ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS)) {
+            throw new IllegalArgumentException("index.mergeThreads and index.maxMergeCount must both be set or both be -1");
+        }
+        if (mergeThreads != ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS && maxMergeCount < mergeThreads) {
+            throw new IllegalArgumentException("index.maxMergeCount must be at least index.mergeThreads");
+        }
+    }
+    
+    private IndexConfig(IndexConfig base, File indexDir, int searchThreads, double maxStaleSeconds) {
+        this.indexDir = indexDir;
+        this.directoryType = base.directoryType;
+        this.shardCount = base.shardCount;
+        this.ramBufferMB = base.ramBufferMB;
+        this.mergePolicyType = base.mergePolicyType;
+        this.segmentsPerTier = base.segmentsPerTier;
+        this.maxMergedSegmentMB = base.maxMergedSegmentMB;
+        this.mergeFactor = base.mergeFactor;
+        this.mergeThreads = base.mergeThreads;
+        this.maxMergeCount = base.maxMergeCount;
+        this.bulkProfile = base.bulkProfile;
+        this.bulkRamBufferMB = base.bulkRamBufferMB;
+        this.bulkSegmentsPerTier = base.bulkSegmentsPerTier;
+        this.searchThreads = searchThreads;
+        this.maxStaleSeconds = maxStaleSeconds;
+        this.vectorDimension = base.vectorDimension;
+        this.vectorSampleSize = base.vectorSampleSize;
+        this.vectorMaxConnections = base.vectorMaxConnections;
+        this.vectorBeamWidth = base.vectorBeamWidth;
+        this.vectorEfSearch = base.vectorEfSearch;
+    }
+    
+    /**
+     * Defaults, overridden by the configuration file and then by system properties
+     */
+    public static IndexConfig load() throws IOException {
+        Properties properties = new Properties();
+        String configFile = System.getProperty(CONFIG_FILE_PROPERTY);
+        File file = new File(configFile != null ? configFile : DEFAULT_CONFIG_FILE);
+        if (configFile != null || file.isFile()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+            logger.info("Loaded index configuration from {}", file);
+        }
+        
+        Properties merged = new Properties();
+        putPrefixed(merged, properties);
+        putPrefixed(merged, System.getProperties());
+        return new IndexConfig(merged);
+    }
+    
+    /**
+     * Configuration from the given properties only, keys with the "pdfnlp." prefix
+     */
+    public static IndexConfig fromProperties(Properties properties) {
+        Properties merged = new Properties();
+        putPrefixed(merged, properties);
+        return new IndexConfig(merged);
+    }
+    
+    private static void putPrefixed(Properties target, Properties source) {
+        for (String name : source.stringPropertyNames()) {
+            if (name.startsWith(PREFIX)) {
+                target.setProperty(name.substring(PREFIX.length()), source.getProperty(name));
+            }
+        }
+    }
+    
+    private static String upperEnumName(Properties properties, String key, String defaultValue) {
+        // logByteSize -> LOG_BYTE_SIZE
+        String value = properties.getProperty(key, defaultValue).trim();
+        return value.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT);
+    }
+    
+    private static int positiveInt(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        int parsed = Integer.parseInt(value.trim());
+        if (parsed < 1) {
+            throw new IllegalArgumentException(PREFIX + key + " must be positive: " + value);
+        }
+        return parsed;
+    }
+    
+    private static double positiveDouble(Properties properties, String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        double parsed = Double.parseDouble(value.trim());
+        if (!(parsed > 0)) {
+            throw new IllegalArgumentException(PREFIX + key + " must be positive: " + value);
+        }
+        return parsed;
+    }
+    
+    public IndexConfig withIndexDir(File indexDir) {
+        return new IndexConfig(this, indexDir, searchThreads, maxStaleSeconds);
+    }
+    
+    public IndexConfig withSearch(double maxStaleSeconds, int searchThreads) {
+        return new IndexConfig(this, indexDir, searchThreads, maxStaleSeconds);
+    }
+    
+    public FSDirectory openDirectory(File directory) throws IOException {
+        switch (directoryType) {
+            case MMAP:
+                return new MMapDirectory(directory.toPath());
+            case NIO:
+                return new NIOFSDirectory(directory.toPath());
+            default:
+                return FSDirectory.open(directory.toPath());
+        }
+    }
+    
+    /**
+     * @param bulk whether to create the policy of the bulk profile, which lets more
+     *             segments accumulate before merging
+     */
+    public MergePolicy createMergePolicy(boolean bulk) {
+        if (mergePolicyType == MergePolicyType.LOG_BYTE_SIZE) {
+            LogByteSizeMergePolicy mergePolicy = new LogByteSizeMergePolicy();
+            mergePolicy.setMergeFactor(mergeFactor);
+            return mergePolicy;
+        }
+        TieredMergePolicy mergePolicy = new TieredMergePolicy();
+        double tierSize = bulk ? bulkSegmentsPerTier : segmentsPerTier;
+        mergePolicy.setSegmentsPerTier(tierSize);
+        // At least as many segments as a tier holds may be merged at once
+        mergePolicy.setMaxMergeAtOnce(Math.max(10, (int) Math.ceil(tierSize)));
+        mergePolicy.setMaxMergedSegmentMB(maxMergedSegmentMB);
+        return mergePolicy;
+    }
+    
+    public ConcurrentMergeScheduler createMergeScheduler() {
+        ConcurrentMergeScheduler mergeScheduler = new ConcurrentMergeScheduler();
+        mergeScheduler.setMaxMergesAndThreads(maxMergeCount, mergeThreads);
+        return mergeScheduler;
+    }
+    
+    public File getIndexDir() {
+        return indexDir;
+    }
+    
+    public DirectoryType getDirectoryType() {
+        return directoryType;
+    }
+    
+    public int getShardCount() {
+        return shardCount;
+    }
+    
+    public double getRamBufferMB() {
+        return ramBufferMB;
+    }
+    
+    public MergePolicyType getMergePolicyType() {
+        return mergePolicyType;
+    }
+    
+    public boolean isBulkProfile() {
+        return bulkProfile;
+    }
+    
+    public double getBulkRamBufferMB() {
+        return bulkRamBufferMB;
+    }
+    
+    public int getSearchThreads() {
+        return searchThreads;
+    }
+    
+    public double getMaxStaleSeconds() {
+        return maxStaleSeconds;
+    }
+    
+    public int getVectorDimension() {
+        return vectorDimension;
+    }
+    
+    public int getVectorSampleSize() {
+        return vectorSampleSize;
+    }
+    
+    public int getVectorMaxConnections() {
+        return vectorMaxConnections;
+    }
+    
+    public int getVectorBeamWidth() {
+        return vectorBeamWidth;
+    }
+    
+    public int getVectorEfSearch() {
+        return vectorEfSearch;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("IndexConfig{indexDir=%s, directory=%s, shards=%d, ramBufferMB=%.0f, mergePolicy=%s, mergeThreads=%s, "
+                + "bulkProfile=%s (ramBufferMB=%.0f), searchThreads=%d, maxStaleSeconds=%.3f}",
+            indexDir, directoryType, shardCount, ramBufferMB, mergePolicyType,
+            mergeThreads < 0 ? "auto" : String.valueOf(mergeThreads),
+            bulkProfile, bulkRamBufferMB, searchThreads, maxStaleSeconds);
+    }
+}
@@ -0,0 +1,47 @@
+package com.pdfnlp.service;
+
+/**
+ * How chunks are laid out in the Lucene index. The layout is recorded in the commit data
+ * of the index it creates; an existing index keeps its layout until it is rebuilt.
+ */
+public enum IndexLayout {
+    /** String page/chunk fields, full chunk text stored with the fast stored-fields codec */
+    STANDARD(false, false, false, false),
+
+    /**
+     * BEST_COMPRESSION stored fields, numeric points/doc values for page and chunk index,
+     * and content postings with offsets for highlighting
+     */
+    COMPACT(true, true, false, true),
+
+    /** COMPACT, and each chunk stores only the text not shared with the previous chunk */
+    COMPACT_DEDUPLICATED(true, true, true, true);
+
+    private final boolean bestCompression;
+    private final boolean numericFields;
+    private final boolean deduplicatedContent;
+    private final boolean contentOffsets;
+
+    IndexLayout(boolean bestCompression, boolean numericFields, boolean deduplicatedContent, boolean contentOffsets) {
+        this.bestCompression = bestCompression;
+        this.numericFields = numericFields;
+        this.deduplicatedContent = deduplicatedContent;
+        this.contentOffsets = contentOffsets;
+    }
+
+    public boolean isBestCompression() {
+        return bestCompression;
+    }
+
+    public boolean isNumericFields() {
+        return numericFields;
+    }
+
+    public boolean isDeduplicatedContent() {
+        return deduplicatedContent;
+    }
+
+    public boolean isContentOffsets() {
+        return contentOffsets;
+    }
+}
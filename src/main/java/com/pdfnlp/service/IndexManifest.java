@@ -0,0 +1,80 @@
+package com.pdfnlp.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pdfnlp.model.ManifestEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * JSON manifest of the indexed PDF files, keyed by normalized absolute path.
+ *
+ * Entries may be updated concurrently by ingest workers. A snapshot is taken right
+ * before each index commit and written after it succeeds, so the file on disk never
+ * claims more than the committed index contains. The file lives inside the index
+ * directory, so it is deleted together with the index.
+ */
+public class IndexManifest {
+    private static final Logger logger = LoggerFactory.getLogger(IndexManifest.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    
+    private final File manifestFile;
+    private final ConcurrentMap<String, ManifestEntry> entries;
+    
+    private IndexManifest(File manifestFile, Map<String, ManifestEntry> entries) {
+        this.manifestFile = manifestFile;
+        this.entries = new ConcurrentHashMap<String, ManifestEntry>(entries);
+    }
+    
+    public static IndexManifest load(File manifestFile) throws IOException {
+        Map<String, ManifestEntry> entries = new HashMap<String, ManifestEntry>();
+        if (manifestFile.exists()) {
+            entries = MAPPER.readValue(manifestFile, new TypeReference<Map<String, ManifestEntry>>() { });
+            logger.info("Loaded index manifest with {} documents: {}", entries.size(), manifestFile);
+        }
+        return new IndexManifest(manifestFile, entries);
+    }
+    
+    public ManifestEntry get(String filePath) {
+        return entries.get(filePath);
+    }
+    
+    public void put(ManifestEntry entry) {
+        entries.put(entry.getFilePath(), entry);
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Forgets all entries, e.g. when the index they describe no longer exists
+     */
+    public void clear() {
+        entries.clear();
+    }
+    
+    public Map<String, ManifestEntry> snapshot() {
+        return new HashMap<String, ManifestEntry>(entries);
+    }
+    
+    /**
+     * Writes the snapshot to a temporary file and atomically replaces the manifest with it.
+     * Saves are serialized, as they all go through the same temporary file.
+     */
+    public synchronized void save(Map<String, ManifestEntry> snapshot) throws IOException {
+        File tempFile = new File(manifestFile.getPath() + ".tmp");
+        MAPPER.writeValue(tempFile, snapshot);
+        Files.move(tempFile.toPath(), manifestFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
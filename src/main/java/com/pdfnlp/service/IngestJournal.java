@@ -0,0 +1,103 @@
+package com.pdfnlp.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JSON journal of the ingest jobs that are not committed yet: the absolute path of each
+ * submitted file with the number of its pending jobs, in submission order.
+ *
+ * A job is added before it is queued and removed only after the index commit covering it,
+ * so after a crash every job that may be missing from the index is still in the journal.
+ * The file is rewritten on every change; it stays small because the queue is bounded.
+ */
+public class IngestJournal {
+    private static final Logger logger = LoggerFactory.getLogger(IngestJournal.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    
+    private final File journalFile;
+    private final LinkedHashMap<String, Integer> pendingJobs;
+    
+    private IngestJournal(File journalFile, Map<String, Integer> pendingJobs) {
+        this.journalFile = journalFile;
+        this.pendingJobs = new LinkedHashMap<String, Integer>(pendingJobs);
+    }
+    
+    public static IngestJournal load(File journalFile) throws IOException {
+        Map<String, Integer> pendingJobs = new LinkedHashMap<String, Integer>();
+        if (journalFile.exists()) {
+            pendingJobs = MAPPER.readValue(journalFile, new TypeReference<LinkedHashMap<String, Integer>>() { });
+            logger.info("Loaded ingest journal with {} pending files: {}", pendingJobs.size(), journalFile);
+        }
+        return new IngestJournal(journalFile, pendingJobs);
+    }
+    
+    /**
+     * @return files with pending jobs, once per job, in submission order
+     */
+    public synchronized List<File> pendingFiles() {
+        List<File> files = new ArrayList<File>();
+        for (Map.Entry<String, Integer> entry : pendingJobs.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                files.add(new File(entry.getKey()));
+            }
+        }
+        return files;
+    }
+    
+    public synchronized void add(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        Integer jobs = pendingJobs.get(path);
+        pendingJobs.put(path, jobs == null ? 1 : jobs + 1);
+        save();
+    }
+    
+    /**
+     * Removes one pending job per entry of files
+     */
+    public synchronized void remove(Collection<File> files) throws IOException {
+        if (files.isEmpty()) {
+            return;
+        }
+        for (File file : files) {
+            String path = file.getAbsolutePath();
+            Integer jobs = pendingJobs.get(path);
+            if (jobs == null || jobs <= 1) {
+                pendingJobs.remove(path);
+            } else {
+                pendingJobs.put(path, jobs - 1);
+            }
+        }
+        save();
+    }
+    
+    public synchronized int size() {
+        int jobs = 0;
+        for (int fileJobs : pendingJobs.values()) {
+            jobs += fileJobs;
+        }
+        return jobs;
+    }
+    
+    /**
+     * Writes to a temporary file and atomically replaces the journal with it
+     */
+    private void save() throws IOException {
+        File tempFile = new File(journalFile.getPath() + ".tmp");
+        MAPPER.writeValue(tempFile, pendingJobs);
+        Files.move(tempFile.toPath(), journalFile.toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,324 @@
+package com.pdfnlp.service;
+
+import com.pdfnlp.util.Counter;
+import com.pdfnlp.util.LatencyHistogram;
+import com.pdfnlp.util.Metrics;
+import com.pdfnlp.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Continuous ingest next to search: PDF files submitted from any thread wait in a bounded
+ * queue and are brought up to date by a fixed set of worker threads. submit() blocks while
+ * the queue is full, so producers are slowed down to the pace of indexing instead of piling
+ * up work in memory; trySubmit() gives up after a timeout instead.
+ *
+ * Every job is recorded in an IngestJournal next to the index until the index commit that
+ * covers it. Jobs found in the journal when a queue is created, i.e. interrupted by a crash
+ * or still queued at close(), are resumed first; re-running a job whose file was committed
+ * after all only costs the manifest check. The index is committed after commitEveryFiles
+ * processed files (0 = never on count alone) and whenever the queue runs empty. New chunks
+ * become searchable with the periodic reader refresh of the service. Jobs for the same file
+ * may be picked up by two workers at once; the service runs them one after the other.
+ *
+ * Thread-safe. Close the queue before the service.
+ */
+public class IngestQueue implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(IngestQueue.class);
+    private static final LatencyHistogram QUEUE_WAIT_TIME = Metrics.histogram("ingest.queueWait");
+    private static final LatencyHistogram JOB_TIME = Metrics.histogram("ingest.job");
+    private static final Counter SUBMITTED_JOBS = Metrics.counter("ingest.submittedJobs");
+    private static final Counter REJECTED_JOBS = Metrics.counter("ingest.rejectedJobs");
+    // How often idle workers check whether the queue has been closed
+    private static final long POLL_MILLIS = 100;
+    // Delay before an idle queue retries a failed commit
+    private static final long COMMIT_RETRY_MILLIS = 5000;
+    
+    private final SimplePDFSearchService service;
+    private final IngestJournal journal;
+    private final BlockingQueue<Job> queue;
+    private final int commitEveryFiles;
+    private final ExecutorService workers;
+    private final Object commitLock = new Object();
+    private volatile boolean closed;
+    // Guarded by this: processed files not committed yet, and jobs not committed yet
+    private final List<File> uncommittedFiles = new ArrayList<File>();
+    private int outstandingJobs;
+    private int runningJobs;
+    // System.nanoTime() from which a failed commit is retried, if one is pending
+    private boolean commitRetryPending;
+    private long commitRetryNanos;
+    
+    /**
+     * Starts the workers and resumes the jobs left in the journal of the service's index
+     *
+     * @param capacity         jobs that may wait in the queue before submit() blocks
+     * @param commitEveryFiles processed files after which the index is committed, 0 = only
+     *                         when the queue runs empty
+     */
+    public IngestQueue(SimplePDFSearchService service, int workerCount, int capacity, int commitEveryFiles) throws IOException {
+        this.service = service;
+        this.journal = IngestJournal.load(new File(service.getIndexConfig().getIndexDir().getPath() + ".journal"));
+        this.queue = new LinkedBlockingQueue<Job>(capacity);
+        this.commitEveryFiles = commitEveryFiles;
+        this.workers = Executors.newFixedThreadPool(workerCount, new NamedThreadFactory("ingest-worker"));
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    runWorker();
+                }
+            });
+        }
+        
+        List<File> resumed = journal.pendingFiles();
+        if (!resumed.isEmpty()) {
+            logger.info("Resuming {} interrupted ingest jobs", resumed.size());
+        }
+        for (File pdfFile : resumed) {
+            enqueue(pdfFile, -1, null);
+        }
+    }
+    
+    /**
+     * Queues the file for indexing, waiting while the queue is full
+     */
+    public void submit(File pdfFile) throws IOException {
+        journal.add(pdfFile);
+        enqueue(pdfFile, -1, null);
+        SUBMITTED_JOBS.increment();
+    }
+    
+    /**
+     * Queues the file for indexing unless the queue stays full for the given time
+     *
+     * @return false if the file was not queued
+     */
+    public boolean trySubmit(File pdfFile, long timeout, TimeUnit unit) throws IOException {
+        journal.add(pdfFile);
+        if (!enqueue(pdfFile, timeout, unit)) {
+            journal.remove(Collections.singletonList(pdfFile));
+            REJECTED_JOBS.increment();
+            return false;
+        }
+        SUBMITTED_JOBS.increment();
+        return true;
+    }
+    
+    /**
+     * @param timeout negative to wait for queue space as long as it takes
+     */
+    private boolean enqueue(File pdfFile, long timeout, TimeUnit unit) throws IOException {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Ingest queue is closed");
+            }
+            outstandingJobs++;
+        }
+        boolean queued = false;
+        try {
+            Job job = new Job(pdfFile, System.nanoTime());
+            if (timeout < 0) {
+                queue.put(job);
+                queued = true;
+            } else {
+                queued = queue.offer(job, timeout, unit);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Still journaled, so the job is resumed by the next queue
+            throw new InterruptedIOException("Interrupted while waiting to queue " + pdfFile);
+        } finally {
+            if (!queued) {
+                jobsFinished(0, 1);
+            }
+        }
+        return queued;
+    }
+    
+    private void runWorker() {
+        while (!closed) {
+            Job job;
+            try {
+                job = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (job == null) {
+                retryFailedCommit();
+                continue;
+            }
+            synchronized (this) {
+                runningJobs++;
+            }
+            QUEUE_WAIT_TIME.recordSince(job.submittedNanos);
+            
+            long start = System.nanoTime();
+            try {
+                int chunkCount = service.updateFile(job.pdfFile);
+                if (chunkCount == SimplePDFSearchService.UNCHANGED) {
+                    logger.debug("PDF unchanged since last indexing, skipped: {}", job.pdfFile);
+                } else {
+                    logger.info("Ingested {} ({} chunks)", job.pdfFile, chunkCount);
+                }
+            } catch (IOException | RuntimeException e) {
+                // Failed jobs are committed like the others and not retried
+                logger.error("Failed to ingest {}", job.pdfFile, e);
+            }
+            JOB_TIME.recordSince(start);
+            
+            List<File> commitFiles = null;
+            synchronized (this) {
+                runningJobs--;
+                uncommittedFiles.add(job.pdfFile);
+                if ((commitEveryFiles > 0 && uncommittedFiles.size() >= commitEveryFiles)
+                        || (queue.isEmpty() && runningJobs == 0)) {
+                    commitFiles = new ArrayList<File>(uncommittedFiles);
+                    uncommittedFiles.clear();
+                }
+            }
+            if (commitFiles != null) {
+                commit(commitFiles);
+            }
+        }
+    }
+    
+    /**
+     * Commits the files of a failed commit once the retry delay has passed, unless jobs are
+     * running; otherwise an idle queue would never commit them and awaitIdle() would hang.
+     */
+    private void retryFailedCommit() {
+        List<File> commitFiles;
+        synchronized (this) {
+            if (!commitRetryPending || runningJobs > 0 || System.nanoTime() - commitRetryNanos < 0) {
+                return;
+            }
+            commitRetryPending = false;
+            if (uncommittedFiles.isEmpty()) {
+                return;
+            }
+            commitFiles = new ArrayList<File>(uncommittedFiles);
+            uncommittedFiles.clear();
+        }
+        logger.info("Retrying the commit of {} ingested files", commitFiles.size());
+        commit(commitFiles);
+    }
+    
+    /**
+     * Commits the index and then drops the jobs of the given files from the journal. If the
+     * commit fails the files are committed with the next batch, or retried after
+     * COMMIT_RETRY_MILLIS when no further jobs arrive.
+     */
+    private void commit(List<File> files) {
+        synchronized (commitLock) {
+            try {
+                service.commitIndex();
+                journal.remove(files);
+            } catch (IOException e) {
+                logger.error("Ingest commit of {} files failed", files.size(), e);
+                synchronized (this) {
+                    uncommittedFiles.addAll(files);
+                    commitRetryPending = true;
+                    commitRetryNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COMMIT_RETRY_MILLIS);
+                }
+                return;
+            }
+        }
+        logger.info("Committed {} ingested files", files.size());
+        jobsFinished(files.size(), 0);
+    }
+    
+    private synchronized void jobsFinished(int committed, int abandoned) {
+        outstandingJobs -= committed + abandoned;
+        notifyAll();
+    }
+    
+    /**
+     * Waits until every job submitted so far has been processed and committed
+     *
+     * @return false if the timeout elapsed first
+     */
+    public synchronized boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (outstandingJobs > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+    
+    /**
+     * Jobs submitted and not committed yet, including queued and running ones
+     */
+    public synchronized int getOutstandingJobs() {
+        return outstandingJobs;
+    }
+    
+    public int getQueuedJobs() {
+        return queue.size();
+    }
+    
+    /**
+     * Lets running jobs finish and commits them. Jobs still waiting in the queue stay in the
+     * journal and are resumed by the next queue on the same index.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("Waiting for running ingest jobs to finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing the ingest queue");
+        }
+        
+        List<Job> queued = new ArrayList<Job>();
+        queue.drainTo(queued);
+        if (!queued.isEmpty()) {
+            logger.info("{} queued ingest jobs left for the next start", queued.size());
+            jobsFinished(0, queued.size());
+        }
+        List<File> commitFiles;
+        synchronized (this) {
+            commitFiles = new ArrayList<File>(uncommittedFiles);
+            uncommittedFiles.clear();
+        }
+        if (!commitFiles.isEmpty()) {
+            commit(commitFiles);
+        }
+    }
+    
+    private static final class Job {
+        private final File pdfFile;
+        private final long submittedNanos;
+        
+        Job(File pdfFile, long submittedNanos) {
+            this.pdfFile = pdfFile;
+            this.submittedNanos = submittedNanos;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.pdfnlp.service;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Returns the fragments of a chunk that contain query matches, with the matches wrapped
+ * in tags. Match offsets come from the postings of the text field when it was indexed
+ * with offsets; otherwise the stored text is re-analyzed, which gives the same offsets
+ * at a higher cost.
+ *
+ * Exact terms are collected from the text field's clauses; terms of the other query
+ * fields (analyzed variants and edge n-gram prefixes) are matched as prefixes of the
+ * text field's terms. Immutable and thread-safe.
+ */
+public class OffsetsHighlighter {
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    private final Analyzer analyzer;
+    private final String field;
+    private final int fragmentSize;
+    private final String preTag;
+    private final String postTag;
+
+    public OffsetsHighlighter(Analyzer analyzer, String field, int fragmentSize, String preTag, String postTag) {
+        this.analyzer = analyzer;
+        this.field = field;
+        this.fragmentSize = fragmentSize;
+        this.preTag = preTag;
+        this.postTag = postTag;
+    }
+
+    /**
+     * @param docId top-level document id in the reader
+     * @param text  full text of the field for that document
+     * @return up to maxFragments fragments in text order, best scoring first if more matched
+     */
+    public List<String> highlight(IndexReader reader, int docId, String text, Query query,
+                                  int maxFragments) throws IOException {
+        Set<String> exactTerms = new HashSet<String>();
+        Set<String> prefixes = new HashSet<String>();
+        collectTerms(query, exactTerms, prefixes);
+
+        List<int[]> matches = postingsOffsets(reader, docId, exactTerms, prefixes);
+        if (matches == null) {
+            matches = analyzedOffsets(text, exactTerms, prefixes);
+        }
+        return fragments(text, matches, maxFragments);
+    }
+
+    private void collectTerms(Query query, Set<String> exactTerms, Set<String> prefixes) {
+        Set<Term> terms = new HashSet<Term>();
+        query.visit(QueryVisitor.termCollector(terms));
+        for (Term term : terms) {
+            if (field.equals(term.field())) {
+                exactTerms.add(term.text());
+            } else {
+                prefixes.add(term.text());
+            }
+        }
+    }
+
+    /**
+     * @return match offsets, or null if the field of this segment has no offsets indexed
+     */
+    private List<int[]> postingsOffsets(IndexReader reader, int docId, Set<String> exactTerms,
+                                        Set<String> prefixes) throws IOException {
+        List<LeafReaderContext> leaves = reader.leaves();
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        Terms terms = leaf.reader().terms(field);
+        if (terms == null || !terms.hasOffsets()) {
+            return null;
+        }
+        int leafDoc = docId - leaf.docBase;
+
+        List<int[]> matches = new ArrayList<int[]>();
+        TermsEnum termsEnum = terms.iterator();
+        PostingsEnum postings = null;
+        for (String exactTerm : exactTerms) {
+            if (termsEnum.seekExact(new BytesRef(exactTerm))) {
+                postings = addOffsets(termsEnum, postings, leafDoc, matches);
+            }
+        }
+        for (String prefix : prefixes) {
+            BytesRef prefixBytes = new BytesRef(prefix);
+            if (termsEnum.seekCeil(prefixBytes) == TermsEnum.SeekStatus.END) {
+                continue;
+            }
+            int expansions = 0;
+            do {
+                if (!StringHelper.startsWith(termsEnum.term(), prefixBytes)) {
+                    break;
+                }
+                postings = addOffsets(termsEnum, postings, leafDoc, matches);
+            } while (++expansions < MAX_PREFIX_EXPANSIONS && termsEnum.next() != null);
+        }
+        return matches;
+    }
+
+    private static PostingsEnum addOffsets(TermsEnum termsEnum, PostingsEnum reuse, int leafDoc,
+                                           List<int[]> matches) throws IOException {
+        PostingsEnum postings = termsEnum.postings(reuse, PostingsEnum.OFFSETS);
+        if (postings.advance(leafDoc) == leafDoc) {
+            for (int i = 0; i < postings.freq(); i++) {
+                postings.nextPosition();
+                matches.add(new int[] {postings.startOffset(), postings.endOffset()});
+            }
+        }
+        return postings;
+    }
+
+    private List<int[]> analyzedOffsets(String text, Set<String> exactTerms, Set<String> prefixes) throws IOException {
+        List<int[]> matches = new ArrayList<int[]>();
+        TokenStream tokenStream = analyzer.tokenStream(field, text);
+        try {
+            CharTermAttribute termAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+            OffsetAttribute offsetAttribute = tokenStream.addAttribute(OffsetAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                String token = termAttribute.toString();
+                if (exactTerms.contains(token) || startsWithAny(token, prefixes)) {
+                    matches.add(new int[] {offsetAttribute.startOffset(), offsetAttribute.endOffset()});
+                }
+            }
+            tokenStream.end();
+        } finally {
+            tokenStream.close();
+        }
+        return matches;
+    }
+
+    private static boolean startsWithAny(String token, Set<String> prefixes) {
+        for (String prefix : prefixes) {
+            if (token.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Groups matches into windows of about fragmentSize characters, keeps the windows with
+     * the most matches and renders them in text order
+     */
+    private List<String> fragments(String text, List<int[]> matches, int maxFragments) {
+        if (matches.isEmpty() || maxFragments <= 0) {
+            return Collections.emptyList();
+        }
+        Collections.sort(matches, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(b[1], a[1]);
+            }
+        });
+
+        // Each window: {start, end, first match, match count}
+        List<int[]> windows = new ArrayList<int[]>();
+        int previousEnd = 0;
+        int i = 0;
+        while (i < matches.size()) {
+            // Leading context, without repeating text of the previous window
+            int matchStart = matches.get(i)[0];
+            int start = Math.min(matchStart, Math.max(previousEnd, wordStart(text, Math.max(0, matchStart - fragmentSize / 4))));
+            int limit = wordEnd(text, start + fragmentSize);
+            int first = i;
+            int end = matches.get(i)[1];
+            i++;
+            while (i < matches.size() && matches.get(i)[1] <= Math.max(end, limit)) {
+                end = Math.max(end, matches.get(i)[1]);
+                i++;
+            }
+            previousEnd = Math.max(limit, wordEnd(text, end));
+            windows.add(new int[] {start, previousEnd, first, i - first});
+        }
+
+        if (windows.size() > maxFragments) {
+            Collections.sort(windows, new Comparator<int[]>() {
+                @Override
+                public int compare(int[] a, int[] b) {
+                    return Integer.compare(b[3], a[3]);
+                }
+            });
+            windows = new ArrayList<int[]>(windows.subList(0, maxFragments));
+            Collections.sort(windows, new Comparator<int[]>() {
+                @Override
+                public int compare(int[] a, int[] b) {
+                    return Integer.compare(a[0], b[0]);
+                }
+            });
+        }
+
+        List<String> fragments = new ArrayList<String>(windows.size());
+        for (int[] window : windows) {
+            fragments.add(render(text, window[0], window[1], matches.subList(window[2], window[2] + window[3])));
+        }
+        return fragments;
+    }
+
+    private String render(String text, int start, int end, List<int[]> matches) {
+        StringBuilder fragment = new StringBuilder(end - start + matches.size() * (preTag.length() + postTag.length()));
+        int position = start;
+        for (int[] match : matches) {
+            // Overlapping matches (e.g. a term and its own prefix) are tagged once
+            if (match[0] < position) {
+                continue;
+            }
+            int matchEnd = Math.min(match[1], end);
+            fragment.append(text, position, match[0]).append(preTag).append(text, match[0], matchEnd).append(postTag);
+            position = matchEnd;
+        }
+        fragment.append(text, position, end);
+
+        // Fragments are shown inline, so line breaks of the extracted page become spaces
+        for (int i = 0; i < fragment.length(); i++) {
+            if (fragment.charAt(i) == '\n' || fragment.charAt(i) == '\r') {
+                fragment.setCharAt(i, ' ');
+            }
+        }
+        return fragment.toString().trim();
+    }
+
+    private static int wordStart(String text, int offset) {
+        int start = offset;
+        while (start > 0 && !Character.isWhitespace(text.charAt(start - 1))) {
+            start--;
+        }
+        return start;
+    }
+
+    private static int wordEnd(String text, int offset) {
+        int end = Math.min(offset, text.length());
+        while (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+}
@@ -1,26 +1,37 @@
 package com.pdfnlp.service;
 
+import com.pdfnlp.model.CacheStats;
+import com.pdfnlp.util.BoundedCache;
+import com.pdfnlp.util.LatencyHistogram;
+import com.pdfnlp.util.Metrics;
+import com.pdfnlp.util.TermCounts;
 import opennlp.tools.tokenize.SimpleTokenizer;
 import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.util.Span;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.regex.Pattern;
 
 /**
  * OpenNLP TTTT Processor for Java 8
  * Uses Apache OpenNLP 1.9.4 (Java 8 compatible) with intelligent TTTT processing
  * Combines real NLP with smart algorithms for compound word detection
+ * Instances can be shared between threads; their only mutable state is the concurrent word cache
  */
 public class OpenNLP8TTTTProcessor {
     private static final Logger logger = LoggerFactory.getLogger(OpenNLP8TTTTProcessor.class);
     
     private final Tokenizer tokenizer;
     private final Set<String> TTTTStopWords;
-    private final Pattern TTTTPattern;
-    private final Pattern englishPattern;
-    private final Pattern numberPattern;
+    private final int maxStopWordLength;
+    
+    // Decompositions keyed by surface form; technical corpora repeat a small vocabulary
+    private final BoundedCache<String, WordAnalysis> wordCache;
+    private static final int DEFAULT_WORD_CACHE_SIZE = 100000;
+    private static final LatencyHistogram ANALYZE_TIME = Metrics.histogram("nlp.analyzeText");
+    private static final LatencyHistogram EXTRACT_KEYWORDS_TIME = Metrics.histogram("nlp.extractKeywords");
+    private static final int MAX_KEYWORDS = 25; // Good for large PDFs
     
     // Essential TTTT particles
     private static final String[] TTTT_PARTICLES = {
@@ -35,84 +46,140 @@ public class OpenNLP8TTTTProcessor {
         "때문", "위해", "통해", "대해", "관해", "있다", "없다", "되다", "하다"
     };
     
+    // TTTT syllable block range [가-힣]
+    private static final char TTTT_FIRST = '가';
+    private static final char TTTT_LAST = '힣';
+    
+    // Particles grouped by their last syllable, keeping TTTT_PARTICLES order inside each group
+    private static final String[][] PARTICLES_BY_LAST_CHAR = indexParticles();
+    
     public OpenNLP8TTTTProcessor() {
+        this(DEFAULT_WORD_CACHE_SIZE);
+    }
+    
+    /**
+     * @param wordCacheSize maximum number of distinct words whose decomposition is memoized;
+     *                      0 disables the cache
+     */
+    public OpenNLP8TTTTProcessor(int wordCacheSize) {
         // Initialize OpenNLP 1.9.4 components (Java 8 compatible)
         this.tokenizer = SimpleTokenizer.INSTANCE;
         
-        // Initialize patterns
-        this.TTTTPattern = Pattern.compile("[가-힣]+");
-        this.englishPattern = Pattern.compile("[a-zA-Z]+");
-        this.numberPattern = Pattern.compile("\\d+");
-        
         // Initialize stop words
         this.TTTTStopWords = new HashSet<String>();
         Collections.addAll(this.TTTTStopWords, TTTT_STOP_WORDS);
+        int longest = 0;
+        for (String stopWord : TTTT_STOP_WORDS) {
+            longest = Math.max(longest, stopWord.length());
+        }
+        this.maxStopWordLength = longest;
+        
+        this.wordCache = new BoundedCache<String, WordAnalysis>(wordCacheSize);
         
         logger.info("OpenNLP 8 TTTT Processor initialized with OpenNLP 1.9.4 (Java 8 compatible)");
     }
     
     /**
      * AI-powered text analysis using OpenNLP + intelligent algorithms
+     *
+     * Runs as one pass per stage without regular expressions: character-class preprocessing,
+     * OpenNLP tokenization into spans, and per-span analysis whose accepted tokens are
+     * appended straight to the result. Tokens the filter would reject (numbers,
+     * punctuation, single characters) are skipped without being materialized.
      */
     public String analyzeText(String text) {
-        if (text == null || text.trim().isEmpty()) {
+        if (text == null || isBlank(text)) {
             return "";
         }
         
-        logger.debug("Analyzing with OpenNLP + AI: {}", text.substring(0, Math.min(50, text.length())));
+        long analyzeStart = System.nanoTime();
         
         // Step 1: Smart preprocessing
         String processed = smartPreprocess(text);
         
-        // Step 2: OpenNLP tokenization
-        String[] tokens = tokenizer.tokenize(processed);
+        // Step 2 - 4: OpenNLP tokenization, TTTT analysis and smart filtering
+        final StringBuilder result = new StringBuilder(processed.length());
+        analyzeTokens(processed, new TokenHandler() {
+            @Override
+            public void accept(String token, int position) {
+                appendToken(token, result);
+            }
+        });
         
-        // Step 3: Intelligent TTTT analysis
-        List<String> analyzedTokens = new ArrayList<String>();
-        for (String token : tokens) {
-            if (isTTTTText(token)) {
+        ANALYZE_TIME.recordSince(analyzeStart);
+        return result.toString();
+    }
+    
+    /**
+     * Tokenizes preprocessed text with OpenNLP and passes every token analyzeText would
+     * keep, with the start offset of the word it came from, to the handler
+     */
+    private void analyzeTokens(String processed, TokenHandler handler) {
+        Span[] spans = tokenizer.tokenizePos(processed);
+        
+        List<String> morphemes = new ArrayList<String>();
+        for (Span span : spans) {
+            int start = span.getStart();
+            int end = span.getEnd();
+            if (containsTTTT(processed, start, end)) {
                 // Combine OpenNLP with intelligent morphological analysis
-                List<String> morphemes = intelligentTTTTAnalysis(token);
-                analyzedTokens.addAll(morphemes);
-            } else {
-                analyzedTokens.add(token);
+                morphemes.clear();
+                expandTTTTWord(processed.substring(start, end), morphemes);
+                for (String morpheme : morphemes) {
+                    handler.accept(morpheme, start);
+                }
+            } else if (end - start > 1 && containsLetter(processed, start, end)) {
+                // Non-TTTT tokens can be neither stop words nor particles
+                handler.accept(processed.substring(start, end), start);
             }
         }
-        
-        // Step 4: Smart filtering
-        List<String> filteredTokens = smartFilter(analyzedTokens);
-        
-        return String.join(" ", filteredTokens);
     }
     
     /**
      * Smart keyword extraction combining OpenNLP with frequency analysis
+     *
+     * Counts and first positions of the analyzed terms are collected in one pass into
+     * primitive arrays, and the best MAX_KEYWORDS terms are selected with a bounded heap
+     * instead of sorting all of them. Equally scored terms are ranked by first occurrence.
      */
     public List<String> extractKeywords(String text) {
-        String analyzed = analyzeText(text);
-        String[] tokens = analyzed.split("\\s+");
+        if (text == null || isBlank(text)) {
+            return new ArrayList<String>();
+        }
         
-        // Calculate smart scores
-        Map<String, Double> termScores = calculateIntelligentScores(tokens, text);
+        long extractStart = System.nanoTime();
+        TermCounts termCounts = new TermCounts(text.length() / 8);
+        int textLength = countTerms(text, false, termCounts);
         
-        // Sort by relevance
-        List<Map.Entry<String, Double>> sortedTerms = new ArrayList<Map.Entry<String, Double>>(termScores.entrySet());
-        Collections.sort(sortedTerms, new Comparator<Map.Entry<String, Double>>() {
-            @Override
-            public int compare(Map.Entry<String, Double> a, Map.Entry<String, Double> b) {
-                return b.getValue().compareTo(a.getValue());
-            }
-        });
-        
-        List<String> keywords = new ArrayList<String>();
-        for (Map.Entry<String, Double> entry : sortedTerms) {
-            keywords.add(entry.getKey());
-            if (keywords.size() >= 25) break; // Good for large PDFs
+        // Calculate smart scores and keep the most relevant terms
+        double[] scores = calculateIntelligentScores(termCounts, textLength);
+        int[] top = termCounts.top(scores, MAX_KEYWORDS);
+        List<String> keywords = new ArrayList<String>(top.length);
+        for (int ordinal : top) {
+            keywords.add(termCounts.term(ordinal));
         }
         
+        EXTRACT_KEYWORDS_TIME.recordSince(extractStart);
         return keywords;
     }
     
+    /**
+     * Counts the analyzed terms of the text with the offsets of their first occurrence
+     *
+     * @param lowerCase whether to lower-case terms like the processedContent field does
+     * @return length of the preprocessed text the offsets refer to
+     */
+    int countTerms(String text, final boolean lowerCase, final TermCounts termCounts) {
+        String processed = smartPreprocess(text);
+        analyzeTokens(processed, new TokenHandler() {
+            @Override
+            public void accept(String token, int position) {
+                termCounts.add(lowerCase ? token.toLowerCase(Locale.ROOT) : token, position);
+            }
+        });
+        return processed.length();
+    }
+    
     /**
      * Smart keyword normalization
      */
@@ -132,50 +199,86 @@ public class OpenNLP8TTTTProcessor {
     
     /**
      * Smart preprocessing
+     *
+     * Single-pass equivalent of collapsing whitespace, trimming, replacing everything except
+     * TTTT, ASCII letters/digits and ()[]{}.,;:- with spaces, and collapsing whitespace again:
+     * inside the trimmed range every run of whitespace or removed characters becomes one space.
      */
     public String smartPreprocess(String text) {
         if (text == null) return "";
         
-        // Normalize whitespace
-        text = text.replaceAll("\\s+", " ").trim();
-        
-        // Keep meaningful content
-        text = text.replaceAll("[^가-힣a-zA-Z0-9\\s()\\[\\]{}.,;:-]", " ");
-        
-        // Final cleanup
-        text = text.replaceAll("\\s+", " ");
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') start++;
+        while (end > start && text.charAt(end - 1) <= ' ') end--;
+        
+        StringBuilder processed = new StringBuilder(end - start);
+        boolean inGap = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (isKeptCharacter(c)) {
+                processed.append(c);
+                inGap = false;
+            } else if (!inGap) {
+                processed.append(' ');
+                inGap = true;
+            }
+        }
         
-        return text;
+        return processed.toString();
+    }
+    
+    /**
+     * Adds the base form, compounds and the original word, in that order, if they pass the filter
+     */
+    void expandTTTTWord(String word, List<String> morphemes) {
+        Collections.addAll(morphemes, analyzeWord(word).morphemes);
+    }
+    
+    public CacheStats getWordCacheStats() {
+        return wordCache.stats();
+    }
+    
+    private WordAnalysis analyzeWord(String word) {
+        WordAnalysis analysis = wordCache.get(word);
+        if (analysis == null) {
+            analysis = decompose(word);
+            wordCache.put(word, analysis);
+        }
+        return analysis;
     }
     
     /**
      * Intelligent TTTT analysis - auto-detects compound words
      */
-    private List<String> intelligentTTTTAnalysis(String word) {
+    private WordAnalysis decompose(String word) {
         List<String> morphemes = new ArrayList<String>();
         
         // Remove particles
         String base = removeParticles(word);
-        if (!base.equals(word) && base.length() > 1) {
-            morphemes.add(base);
+        boolean hasBase = base != word && base.length() > 1;
+        if (hasBase) {
+            addIfKept(base, morphemes);
         }
         
         // Intelligent compound word detection
+        List<String> compounds = Collections.emptyList();
         if (word.length() >= 4) {
-            List<String> compounds = autoDetectCompounds(word);
-            for (String compound : compounds) {
-                if (compound.length() > 1 && !morphemes.contains(compound)) {
-                    morphemes.add(compound);
+            compounds = autoDetectCompounds(word);
+            for (int i = 0; i < compounds.size(); i++) {
+                String compound = compounds.get(i);
+                if (!(hasBase && compound.equals(base)) && compounds.indexOf(compound) == i) {
+                    addIfKept(compound, morphemes);
                 }
             }
         }
         
         // Always include original
         if (word.length() > 1) {
-            morphemes.add(word);
+            addIfKept(word, morphemes);
         }
         
-        return morphemes;
+        return new WordAnalysis(compounds.toArray(new String[0]), morphemes.toArray(new String[0]));
     }
     
     /**
@@ -183,71 +286,60 @@ public class OpenNLP8TTTTProcessor {
      */
     private List<String> autoDetectCompounds(String word) {
         List<String> compounds = new ArrayList<String>();
-        int len = word.length();
+        autoDetectCompounds(word, 0, compounds);
+        return compounds;
+    }
+    
+    /**
+     * Splits word[from..] at the first point where both halves are valid TTTT words,
+     * then recurses into the right half. Works on offsets, so only accepted parts are copied.
+     */
+    private void autoDetectCompounds(String word, int from, List<String> compounds) {
+        int end = word.length();
         
         // Try different split points intelligently
-        for (int i = 2; i <= len - 2; i++) {
-            String part1 = word.substring(0, i);
-            String part2 = word.substring(i);
-            
+        for (int i = from + 2; i <= end - 2; i++) {
             // Check if both parts are meaningful
-            if (part1.length() >= 2 && part2.length() >= 2) {
-                if (isValidTTTTWord(part1) && isValidTTTTWord(part2)) {
-                    compounds.add(part1);
-                    compounds.add(part2);
-                    
-                    // Recursive splitting for long compounds
-                    if (part2.length() >= 4) {
-                        List<String> subCompounds = autoDetectCompounds(part2);
-                        compounds.addAll(subCompounds);
-                    }
-                    break; // Found good split
+            if (isValidTTTTWord(word, from, i) && isValidTTTTWord(word, i, end)) {
+                compounds.add(word.substring(from, i));
+                compounds.add(word.substring(i));
+                
+                // Recursive splitting for long compounds
+                if (end - i >= 4) {
+                    autoDetectCompounds(word, i, compounds);
                 }
+                return; // Found good split
             }
         }
-        
-        return compounds;
     }
     
     /**
-     * Check if TTTT word part is valid
+     * Check if TTTT word part word[start..end) is valid
+     * Short words ending in 의/에/를/을/가/이/는/은 are rejected by the particle check
      */
-    private boolean isValidTTTTWord(String word) {
-        if (word.length() < 2) return false;
-        if (isStopWord(word)) return false;
-        if (isParticle(word)) return false;
-        
-        // TTTT morphology heuristics
-        String[] invalidEndings = {"의", "에", "를", "을", "가", "이", "는", "은"};
-        for (String ending : invalidEndings) {
-            if (word.endsWith(ending) && word.length() <= ending.length() + 1) {
-                return false;
-            }
+    private boolean isValidTTTTWord(String word, int start, int end) {
+        if (end - start < 2) return false;
+        for (int i = start; i < end; i++) {
+            if (!isTTTTChar(word.charAt(i))) return false;
         }
-        
-        return word.matches("[가-힣]{2,}");
+        if (endsWithParticle(word, start, end)) return false;
+        return end - start > maxStopWordLength || !isStopWord(word.substring(start, end));
     }
     
     /**
      * Calculate intelligent term scores
+     *
+     * @param textLength length of the preprocessed text the first positions refer to
+     * @return score per term ordinal
      */
-    private Map<String, Double> calculateIntelligentScores(String[] tokens, String originalText) {
-        Map<String, Integer> frequency = new HashMap<String, Integer>();
-        Map<String, Double> scores = new HashMap<String, Double>();
-        
-        // Calculate frequency
-        for (String token : tokens) {
-            if (token.length() > 1) {
-                frequency.put(token, frequency.getOrDefault(token, 0) + 1);
-            }
-        }
+    double[] calculateIntelligentScores(TermCounts termCounts, int textLength) {
+        double[] scores = new double[termCounts.size()];
         
         // Intelligent scoring
-        for (Map.Entry<String, Integer> entry : frequency.entrySet()) {
-            String term = entry.getKey();
-            int freq = entry.getValue();
+        for (int ordinal = 0; ordinal < termCounts.size(); ordinal++) {
+            String term = termCounts.term(ordinal);
             
-            double score = freq * 1.0;
+            double score = termCounts.count(ordinal) * 1.0;
             
             // Length bonus (longer = more important)
             if (term.length() >= 3) score *= 1.4;
@@ -258,16 +350,16 @@ public class OpenNLP8TTTTProcessor {
             if (isTTTTText(term)) score *= 1.3;
             
             // Position bonus (early appearance = important)
-            if (originalText.indexOf(term) < originalText.length() / 3) {
+            if (termCounts.firstPosition(ordinal) < textLength / 3) {
                 score *= 1.2;
             }
             
             // Avoid numbers and single chars
-            if (term.matches("\\d+") || term.length() == 1) {
+            if (isDigits(term) || term.length() == 1) {
                 score *= 0.1;
             }
             
-            scores.put(term, score);
+            scores[ordinal] = score;
         }
         
         return scores;
@@ -295,41 +387,56 @@ public class OpenNLP8TTTTProcessor {
         
         // Compound variations
         if (keyword.length() >= 4) {
-            List<String> compounds = autoDetectCompounds(keyword);
-            variations.addAll(compounds);
+            Collections.addAll(variations, analyzeWord(keyword).compounds);
         }
         
         return variations;
     }
     
-    private List<String> smartFilter(List<String> tokens) {
-        List<String> filtered = new ArrayList<String>();
-        
-        for (String token : tokens) {
-            if (token.length() > 1 && 
-                !isStopWord(token) && 
-                !isParticle(token) &&
-                !token.matches("\\d+") &&
-                !token.matches("[^가-힣a-zA-Z]+")) {
-                filtered.add(token);
-            }
+    private void addIfKept(String token, List<String> morphemes) {
+        if (token.length() > 1 &&
+            !isStopWord(token) &&
+            !isParticle(token) &&
+            containsLetter(token, 0, token.length())) {
+            morphemes.add(token);
         }
-        
-        return filtered;
+    }
+    
+    private void appendToken(String token, StringBuilder result) {
+        if (result.length() > 0) {
+            result.append(' ');
+        }
+        result.append(token);
     }
     
     private String removeParticles(String word) {
-        for (String particle : TTTT_PARTICLES) {
-            if (word.endsWith(particle) && word.length() > particle.length()) {
-                return word.substring(0, word.length() - particle.length());
+        String[] candidates = particlesEndingWith(word.charAt(word.length() - 1));
+        if (candidates != null) {
+            for (String particle : candidates) {
+                if (word.endsWith(particle) && word.length() > particle.length()) {
+                    return word.substring(0, word.length() - particle.length());
+                }
             }
         }
         return word;
     }
     
     // Helper methods
+    private static boolean isDigits(String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     private boolean isTTTTText(String text) {
-        return TTTTPattern.matcher(text).find();
+        return containsTTTT(text, 0, text.length());
     }
     
     private boolean isStopWord(String word) {
@@ -337,12 +444,109 @@ public class OpenNLP8TTTTProcessor {
     }
     
     private boolean isParticle(String word) {
+        return endsWithParticle(word, 0, word.length());
+    }
+    
+    private boolean endsWithParticle(String word, int start, int end) {
+        String[] candidates = particlesEndingWith(word.charAt(end - 1));
+        if (candidates != null) {
+            for (String particle : candidates) {
+                int length = particle.length();
+                if (end - start >= length && word.regionMatches(end - length, particle, 0, length)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private static String[] particlesEndingWith(char c) {
+        return isTTTTChar(c) ? PARTICLES_BY_LAST_CHAR[c - TTTT_FIRST] : null;
+    }
+    
+    private static String[][] indexParticles() {
+        String[][] index = new String[TTTT_LAST - TTTT_FIRST + 1][];
         for (String particle : TTTT_PARTICLES) {
-            if (word.equals(particle) || word.endsWith(particle)) {
+            int slot = particle.charAt(particle.length() - 1) - TTTT_FIRST;
+            String[] group = index[slot] == null ? new String[0] : index[slot];
+            group = Arrays.copyOf(group, group.length + 1);
+            group[group.length - 1] = particle;
+            index[slot] = group;
+        }
+        return index;
+    }
+    
+    static boolean isTTTTChar(int c) {
+        return c >= TTTT_FIRST && c <= TTTT_LAST;
+    }
+    
+    static boolean isAsciiLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+    
+    private static boolean isKeptCharacter(char c) {
+        if (isTTTTChar(c) || isAsciiLetter(c) || (c >= '0' && c <= '9')) {
+            return true;
+        }
+        switch (c) {
+            case '(': case ')': case '[': case ']': case '{': case '}':
+            case '.': case ',': case ';': case ':': case '-':
                 return true;
-            }
+            default:
+                return false;
+        }
+    }
+    
+    private static boolean containsTTTT(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (isTTTTChar(text.charAt(i))) return true;
         }
         return false;
     }
     
+    static boolean containsTTTT(char[] buffer, int length) {
+        for (int i = 0; i < length; i++) {
+            if (isTTTTChar(buffer[i])) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * True if the range holds a TTTT or ASCII letter, which also rules out pure digit tokens
+     */
+    private static boolean containsLetter(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (isTTTTChar(c) || isAsciiLetter(c)) return true;
+        }
+        return false;
+    }
+    
+    private static boolean isBlank(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > ' ') return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Receives the analyzed tokens of a text in order
+     */
+    private interface TokenHandler {
+        void accept(String token, int position);
+    }
+    
+    /**
+     * Immutable, cacheable analysis of one surface form
+     */
+    private static final class WordAnalysis {
+        final String[] compounds;   // raw compound decomposition
+        final String[] morphemes;   // filtered expansion emitted for the word
+        
+        WordAnalysis(String[] compounds, String[] morphemes) {
+            this.compounds = compounds;
+            this.morphemes = morphemes;
+        }
+    }
+    
 } 
\ No newline at end of file
@@ -1,7 +1,13 @@
 package com.pdfnlp.service;
 
 import com.pdfnlp.model.PDFChunk;
+import com.pdfnlp.util.Counter;
+import com.pdfnlp.util.Hashing;
+import com.pdfnlp.util.LatencyHistogram;
+import com.pdfnlp.util.Metrics;
+import com.pdfnlp.util.NamedThreadFactory;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,70 +15,380 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PDFProcessor {
     private static final Logger logger = LoggerFactory.getLogger(PDFProcessor.class);
     private static final int CHUNK_SIZE = 1000; // Character-based chunk size setting
     private static final int OVERLAP_SIZE = 200; // Overlapping characters between chunks
+    private static final int MIN_PAGES_PER_WORKER = 8; // Smaller ranges are not worth a second document handle
+    private static final int RANGE_PAGES = 8; // Pages a worker extracts before handing them over
+    
+    private static final LatencyHistogram PDF_LOAD_TIME = Metrics.histogram("ingest.pdfLoad");
+    private static final LatencyHistogram PAGE_EXTRACT_TIME = Metrics.histogram("ingest.pageExtract");
+    private static final LatencyHistogram CHUNKING_TIME = Metrics.histogram("ingest.chunking");
+    private static final Counter PAGES = Metrics.counter("ingest.pages");
+    private static final Counter CHUNKS = Metrics.counter("ingest.chunks");
+    
+    private final int workerCount;
+    private final ExecutorService extractionPool;
+    private final PageTextCache textCache;
+    
+    public PDFProcessor() {
+        this(1);
+    }
+    
+    public PDFProcessor(int workerCount) {
+        this(workerCount, null);
+    }
+    
+    /**
+     * @param workerCount number of threads extracting pages of one PDF concurrently;
+     *                    1 keeps the original single-threaded behaviour
+     * @param textCache   extracted page text of previously processed files, or null
+     */
+    public PDFProcessor(int workerCount, PageTextCache textCache) {
+        this.workerCount = Math.max(1, workerCount);
+        this.textCache = textCache;
+        // Parallel extraction leaves the calling thread to hand the chunks to the sink
+        this.extractionPool = this.workerCount > 1
+            ? Executors.newFixedThreadPool(this.workerCount, new NamedThreadFactory("pdf-extract"))
+            : null;
+    }
     
     public List<PDFChunk> processPDF(File pdfFile) throws IOException {
-        List<PDFChunk> chunks = new ArrayList<PDFChunk>();
+        final List<PDFChunk> chunks = new ArrayList<PDFChunk>();
+        processPDF(pdfFile, new ChunkSink() {
+            @Override
+            public void accept(PDFChunk chunk) {
+                chunks.add(chunk);
+            }
+        });
+        return chunks;
+    }
+    
+    /**
+     * Streams chunks to the sink page by page instead of materializing the whole document.
+     * Sequential extraction (workerCount 1, or PDFs of fewer than two ranges of
+     * MIN_PAGES_PER_WORKER pages) holds one page at a time; parallel extraction holds at
+     * most one range of RANGE_PAGES pages per worker. Page texts go to the text cache the
+     * same way, so memory does not grow with the length of the document.
+     *
+     * @return number of chunks emitted
+     */
+    public int processPDF(File pdfFile, ChunkSink sink) throws IOException {
+        return processPDF(pdfFile, textCache != null ? Hashing.sha256Hex(pdfFile) : null, sink);
+    }
+    
+    /**
+     * Same as processPDF(File, ChunkSink) for a caller that already knows the SHA-256 of the
+     * file. Pages found in the text cache are chunked without opening the PDF at all; a full
+     * extraction stores its page texts in the cache.
+     */
+    public int processPDF(File pdfFile, String contentHash, ChunkSink sink) throws IOException {
+        CountingSink countingSink = new CountingSink(sink);
+        
+        PageTextCache.Entry cached = textCache != null && contentHash != null ? textCache.get(contentHash) : null;
+        if (cached != null) {
+            String fileName = pdfFile.getName();
+            String filePath = documentPath(pdfFile);
+            for (int pageNum = 1; pageNum <= cached.getPageCount(); pageNum++) {
+                emitPageChunks(cached.getPageText(pageNum), pageNum, fileName, filePath, countingSink);
+            }
+            logger.info("Generated {} chunks from cached text of PDF file '{}'.", countingSink.count, pdfFile.getName());
+            return countingSink.count;
+        }
         
         PDDocument document = null;
+        PageTextCache.Writer cacheWriter = null;
         try {
-            document = PDDocument.load(pdfFile);
-            PDFTextStripper stripper = new PDFTextStripper();
-            stripper.setSortByPosition(true);
+            document = loadDocument(pdfFile);
             
             int totalPages = document.getNumberOfPages();
-            logger.info("Processing {} pages from PDF file '{}'.", totalPages, pdfFile.getName());
+            int workers = Math.min(workerCount, Math.max(1, totalPages / MIN_PAGES_PER_WORKER));
+            logger.info("Processing {} pages from PDF file '{}' with {} worker(s).",
+                totalPages, pdfFile.getName(), workers);
             
-            for (int pageNum = 1; pageNum <= totalPages; pageNum++) {
-                stripper.setStartPage(pageNum);
-                stripper.setEndPage(pageNum);
-                
-                String pageText = stripper.getText(document);
-                if (pageText != null && !pageText.trim().isEmpty()) {
-                    // Split page text into chunks
-                    List<String> pageChunks = splitIntoChunks(pageText);
-                    
-                    for (int chunkIndex = 0; chunkIndex < pageChunks.size(); chunkIndex++) {
-                        String chunkText = pageChunks.get(chunkIndex);
-                        if (!chunkText.trim().isEmpty()) {
-                            PDFChunk chunk = new PDFChunk(
-                                chunkText.trim(),
-                                pageNum,
-                                pdfFile.getName(),
-                                chunkIndex
-                            );
-                            chunks.add(chunk);
-                        }
-                    }
-                }
+            // Receives the pages in page order when the result is going to be cached
+            cacheWriter = textCache != null && contentHash != null ? textCache.openWriter(contentHash, totalPages) : null;
+            if (workers <= 1) {
+                extractPages(document, 1, totalPages, pdfFile, countingSink, cacheCapture(cacheWriter));
+            } else {
+                // The first worker takes over the loaded document and closes it
+                PDDocument firstDocument = document;
+                document = null;
+                extractPagesInParallel(firstDocument, pdfFile, totalPages, workers, countingSink, cacheWriter);
+            }
+            
+            if (cacheWriter != null) {
+                cacheWriter.commit();
             }
         } finally {
-            if (document != null) {
-                try {
-                    document.close();
-                } catch (IOException e) {
-                    logger.warn("Error closing PDF document", e);
+            closeQuietly(document);
+            if (cacheWriter != null) {
+                cacheWriter.close();
+            }
+        }
+        
+        logger.info("Generated {} chunks from PDF file '{}'.", countingSink.count, pdfFile.getName());
+        return countingSink.count;
+    }
+    
+    /**
+     * Extracts only the given pages (1-based), e.g. the pages that changed since the last
+     * indexing run. Pages beyond the end of the document are ignored.
+     *
+     * @return number of chunks emitted
+     */
+    public int processPages(File pdfFile, Collection<Integer> pageNumbers, ChunkSink sink) throws IOException {
+        CountingSink countingSink = new CountingSink(sink);
+        
+        PDDocument document = null;
+        try {
+            document = loadDocument(pdfFile);
+            int totalPages = document.getNumberOfPages();
+            
+            List<Integer> pages = new ArrayList<Integer>();
+            for (Integer pageNum : new TreeSet<Integer>(pageNumbers)) {
+                if (pageNum >= 1 && pageNum <= totalPages) {
+                    pages.add(pageNum);
+                }
+            }
+            logger.info("Processing {} of {} pages from PDF file '{}'.", pages.size(), totalPages, pdfFile.getName());
+            
+            // Extract consecutive runs of pages with one stripper pass each
+            int i = 0;
+            while (i < pages.size()) {
+                int runStart = pages.get(i);
+                int runEnd = runStart;
+                while (i + 1 < pages.size() && pages.get(i + 1) == runEnd + 1) {
+                    runEnd = pages.get(++i);
                 }
+                extractPages(document, runStart, runEnd, pdfFile, countingSink, null);
+                i++;
             }
+        } finally {
+            closeQuietly(document);
         }
         
-        logger.info("Generated {} chunks from PDF file '{}'.", chunks.size(), pdfFile.getName());
-        return chunks;
+        return countingSink.count;
+    }
+    
+    /**
+     * PageHasher hash of each page, in page order. Used to detect which pages of a modified
+     * file actually changed without running text extraction on all of them.
+     */
+    public List<String> hashPages(File pdfFile) throws IOException {
+        return hashPages(pdfFile, null);
+    }
+    
+    /**
+     * @param contentHash SHA-256 of the file; if given, cached page hashes are returned
+     *                    without opening the PDF
+     */
+    public List<String> hashPages(File pdfFile, String contentHash) throws IOException {
+        PageTextCache.Entry cached = textCache != null && contentHash != null ? textCache.get(contentHash) : null;
+        if (cached != null) {
+            return cached.getPageHashes();
+        }
+        
+        List<String> pageHashes = new ArrayList<String>();
+        
+        PDDocument document = null;
+        try {
+            document = loadDocument(pdfFile);
+            PageHasher pageHasher = new PageHasher();
+            for (PDPage page : document.getPages()) {
+                pageHashes.add(pageHasher.hash(page));
+            }
+        } finally {
+            closeQuietly(document);
+        }
+        
+        return pageHashes;
+    }
+    
+    /**
+     * Identity of a PDF in the index; distinguishes files that share a name
+     */
+    public static String documentPath(File pdfFile) {
+        return pdfFile.getAbsoluteFile().toPath().normalize().toString();
+    }
+    
+    /**
+     * Splits the pages into ranges of RANGE_PAGES pages, extracted by the given number of
+     * workers with a PDDocument and PDFTextStripper each (neither is thread-safe). Ranges are
+     * handed to the sink and the cache writer in page order, so the output matches sequential
+     * extraction. A worker only takes a new range while fewer than `workers` ranges are
+     * extracted or waiting for their turn, so a slow range holds up the workers instead of
+     * letting the finished ranges pile up behind it.
+     */
+    private void extractPagesInParallel(final PDDocument document, final File pdfFile, final int totalPages,
+                                        int workers, ChunkSink sink, PageTextCache.Writer cacheWriter) throws IOException {
+        final int rangeCount = (totalPages + RANGE_PAGES - 1) / RANGE_PAGES;
+        final boolean capturePages = cacheWriter != null;
+        final AtomicInteger nextRange = new AtomicInteger();
+        final Semaphore window = new Semaphore(workers);
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final List<CompletableFuture<ExtractedRange>> ranges = new ArrayList<CompletableFuture<ExtractedRange>>(rangeCount);
+        for (int i = 0; i < rangeCount; i++) {
+            ranges.add(new CompletableFuture<ExtractedRange>());
+        }
+        
+        boolean handedOver = false;
+        try {
+            for (int worker = 0; worker < workers; worker++) {
+                final boolean first = worker == 0;
+                extractionPool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        PDDocument workerDocument = first ? document : null;
+                        try {
+                            while (true) {
+                                window.acquire();
+                                int range = nextRange.getAndIncrement();
+                                if (stopped.get() || range >= rangeCount) {
+                                    window.release();
+                                    return;
+                                }
+                                ExtractedRange extracted = new ExtractedRange(capturePages);
+                                try {
+                                    if (workerDocument == null) {
+                                        workerDocument = loadDocument(pdfFile);
+                                    }
+                                    int rangeStart = 1 + range * RANGE_PAGES;
+                                    extractPages(workerDocument, rangeStart, Math.min(totalPages, rangeStart + RANGE_PAGES - 1),
+                                        pdfFile, extracted, capturePages ? extracted : null);
+                                } catch (Throwable t) {
+                                    ranges.get(range).completeExceptionally(t);
+                                    return;
+                                }
+                                ranges.get(range).complete(extracted);
+                            }
+                        } catch (InterruptedException e) {
+                            // Extraction was abandoned
+                        } finally {
+                            closeQuietly(workerDocument);
+                        }
+                    }
+                });
+                handedOver = true;
+            }
+            
+            for (int i = 0; i < rangeCount; i++) {
+                ExtractedRange extracted = ranges.get(i).get();
+                ranges.set(i, null); // Release the range once it has been handed to the sink
+                extracted.emit(sink, cacheWriter);
+                window.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while extracting " + pdfFile.getName(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Page extraction failed for " + pdfFile.getName(), cause);
+        } finally {
+            // Workers stop after their current range and close their own documents
+            stopped.set(true);
+            window.release(workers);
+            if (!handedOver) {
+                closeQuietly(document);
+            }
+        }
     }
     
-    private List<String> splitIntoChunks(String text) {
-        List<String> chunks = new ArrayList<String>();
+    private void extractPages(PDDocument document, int startPage, int endPage,
+                              File pdfFile, ChunkSink sink, PageCapture capture) throws IOException {
+        String fileName = pdfFile.getName();
+        String filePath = documentPath(pdfFile);
+        PDFTextStripper stripper = new PDFTextStripper();
+        stripper.setSortByPosition(true);
+        PageHasher pageHasher = capture != null ? new PageHasher() : null;
         
+        for (int pageNum = startPage; pageNum <= endPage; pageNum++) {
+            stripper.setStartPage(pageNum);
+            stripper.setEndPage(pageNum);
+            
+            long extractStart = System.nanoTime();
+            String pageText = stripper.getText(document);
+            PAGE_EXTRACT_TIME.recordSince(extractStart);
+            if (capture != null) {
+                capture.capture(pageHasher.hash(document.getPage(pageNum - 1)), pageText);
+            }
+            emitPageChunks(pageText, pageNum, fileName, filePath, sink);
+        }
+    }
+    
+    private void emitPageChunks(String pageText, int pageNum, String fileName, String filePath,
+                                ChunkSink sink) throws IOException {
+        if (pageText != null && !pageText.trim().isEmpty()) {
+            // Split page text into chunks
+            long chunkingStart = System.nanoTime();
+            int[] bounds = splitIntoChunks(pageText);
+            CHUNKING_TIME.recordSince(chunkingStart);
+            
+            int chunkIndex = 0;
+            int previousEnd = -1;
+            for (int i = 0; i < bounds.length; i += 2) {
+                // Same characters String.trim() removes
+                int start = bounds[i];
+                int end = bounds[i + 1];
+                while (start < end && pageText.charAt(start) <= ' ') {
+                    start++;
+                }
+                while (end > start && pageText.charAt(end - 1) <= ' ') {
+                    end--;
+                }
+                if (start == end) {
+                    continue;
+                }
+                
+                PDFChunk chunk = new PDFChunk(
+                    pageText.substring(start, end),
+                    pageNum,
+                    fileName,
+                    filePath,
+                    chunkIndex++
+                );
+                chunk.setOverlapLength(Math.max(0, Math.min(previousEnd, end) - start));
+                previousEnd = end;
+                sink.accept(chunk);
+                CHUNKS.increment();
+            }
+        }
+        PAGES.increment();
+    }
+    
+    private static PDDocument loadDocument(File pdfFile) throws IOException {
+        long start = System.nanoTime();
+        PDDocument document = PDDocument.load(pdfFile);
+        PDF_LOAD_TIME.recordSince(start);
+        return document;
+    }
+    
+    /**
+     * @return start/end offsets of the chunks, as consecutive pairs
+     */
+    private int[] splitIntoChunks(String text) {
         if (text.length() <= CHUNK_SIZE) {
-            chunks.add(text);
-            return chunks;
+            return new int[] {0, text.length()};
         }
         
+        int[] bounds = new int[16];
+        int count = 0;
         int start = 0;
         while (start < text.length()) {
             int end = Math.min(start + CHUNK_SIZE, text.length());
@@ -92,10 +408,110 @@ public class PDFProcessor {
                 }
             }
             
-            chunks.add(text.substring(start, end));
+            if (count + 2 > bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            bounds[count++] = start;
+            bounds[count++] = end;
+            if (end == text.length()) {
+                // The tail is covered; stepping back by the overlap would only emit shrinking copies of it
+                break;
+            }
             start = Math.max(start + 1, end - OVERLAP_SIZE);
         }
         
-        return chunks;
+        return Arrays.copyOf(bounds, count);
+    }
+    
+    private void closeQuietly(PDDocument document) {
+        if (document != null) {
+            try {
+                document.close();
+            } catch (IOException e) {
+                logger.warn("Error closing PDF document", e);
+            }
+        }
+    }
+    
+    private static PageCapture cacheCapture(final PageTextCache.Writer cacheWriter) {
+        if (cacheWriter == null) {
+            return null;
+        }
+        return new PageCapture() {
+            @Override
+            public void capture(String pageHash, String pageText) {
+                cacheWriter.addPage(pageHash, pageText);
+            }
+        };
+    }
+    
+    /**
+     * Receives the hash and text of each extracted page, in page order
+     */
+    private interface PageCapture {
+        void capture(String pageHash, String pageText);
+    }
+    
+    /**
+     * Chunks, and page hashes and texts if captured, of one range extracted by a worker
+     */
+    private static class ExtractedRange implements ChunkSink, PageCapture {
+        private final List<PDFChunk> chunks = new ArrayList<PDFChunk>();
+        private final List<String> pages;
+        
+        ExtractedRange(boolean capturePages) {
+            this.pages = capturePages ? new ArrayList<String>() : null;
+        }
+        
+        @Override
+        public void accept(PDFChunk chunk) {
+            chunks.add(chunk);
+        }
+        
+        @Override
+        public void capture(String pageHash, String pageText) {
+            pages.add(pageHash);
+            pages.add(pageText);
+        }
+        
+        void emit(ChunkSink sink, PageTextCache.Writer cacheWriter) throws IOException {
+            if (cacheWriter != null) {
+                for (int i = 0; i < pages.size(); i += 2) {
+                    cacheWriter.addPage(pages.get(i), pages.get(i + 1));
+                }
+            }
+            for (PDFChunk chunk : chunks) {
+                sink.accept(chunk);
+            }
+        }
+    }
+    
+    private static class CountingSink implements ChunkSink {
+        private final ChunkSink delegate;
+        private int count;
+        
+        CountingSink(ChunkSink delegate) {
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public void accept(PDFChunk chunk) throws IOException {
+            delegate.accept(chunk);
+            count++;
+        }
+    }
+    
+    public int getWorkerCount() {
+        return workerCount;
+    }
+    
+    public PageTextCache getTextCache() {
+        return textCache;
+    }
+    
+    public void close() {
+        if (extractionPool != null) {
+            extractionPool.shutdownNow();
+        }
     }
 } 
\ No newline at end of file
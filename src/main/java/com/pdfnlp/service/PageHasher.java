@@ -0,0 +1,138 @@
+package com.pdfnlp.service;
+
+import com.pdfnlp.util.Hashing;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hashes everything on a page that text extraction reads: the content streams, the
+ * resources they draw from (fonts, form XObjects with their own resources, ...), the
+ * page boxes and the rotation. An edit inside a form XObject or a font therefore
+ * changes the hash of every page using it, not only edits of the page's content stream.
+ *
+ * Streams are hashed from their raw, still encoded bytes, and once per document: one
+ * instance serves the pages of one PDDocument and is not thread-safe.
+ */
+final class PageHasher {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    // Digests of the streams hashed so far, by object identity within the document
+    private final Map<COSBase, byte[]> streamDigests = new IdentityHashMap<COSBase, byte[]>();
+    // Dictionaries and arrays being hashed, to cut reference cycles
+    private final Set<COSBase> path = Collections.newSetFromMap(new IdentityHashMap<COSBase, Boolean>());
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    
+    String hash(PDPage page) throws IOException {
+        MessageDigest digest = Hashing.newDigest();
+        InputStream contents = page.getContents();
+        try {
+            update(digest, contents);
+        } finally {
+            contents.close();
+        }
+        
+        // Inherited values are resolved by PDPage
+        PDResources resources = page.getResources();
+        update(digest, resources != null ? resources.getCOSObject() : null);
+        update(digest, page.getMediaBox().toString() + page.getCropBox() + "R" + page.getRotation());
+        return Hashing.toHex(digest.digest());
+    }
+    
+    private void update(MessageDigest digest, COSBase base) throws IOException {
+        if (base instanceof COSObject) {
+            base = ((COSObject) base).getObject();
+        }
+        if (base == null) {
+            update(digest, "null");
+        } else if (base instanceof COSStream) {
+            byte[] streamDigest = streamDigests.get(base);
+            if (streamDigest == null) {
+                MessageDigest streamHash = Hashing.newDigest();
+                // The dictionary holds the filters and, for form XObjects, the resources
+                updateDictionary(streamHash, (COSDictionary) base);
+                InputStream raw = ((COSStream) base).createRawInputStream();
+                try {
+                    update(streamHash, raw);
+                } finally {
+                    raw.close();
+                }
+                streamDigest = streamHash.digest();
+                streamDigests.put(base, streamDigest);
+            }
+            update(digest, "stream");
+            digest.update(streamDigest);
+        } else if (base instanceof COSDictionary) {
+            update(digest, "<<");
+            updateDictionary(digest, (COSDictionary) base);
+            update(digest, ">>");
+        } else if (base instanceof COSArray) {
+            if (!path.add(base)) {
+                update(digest, "cycle");
+                return;
+            }
+            update(digest, "[");
+            for (COSBase element : (COSArray) base) {
+                update(digest, element);
+            }
+            update(digest, "]");
+            path.remove(base);
+        } else {
+            update(digest, base.toString());
+        }
+    }
+    
+    /**
+     * Entries in name order, so rewriting a dictionary in another order changes nothing
+     */
+    private void updateDictionary(MessageDigest digest, COSDictionary dictionary) throws IOException {
+        if (!path.add(dictionary)) {
+            update(digest, "cycle");
+            return;
+        }
+        List<COSName> keys = new ArrayList<COSName>(dictionary.keySet());
+        Collections.sort(keys);
+        for (COSName key : keys) {
+            // Back references to the page tree would pull in every other page
+            if (COSName.PARENT.equals(key) || COSName.P.equals(key)) {
+                continue;
+            }
+            update(digest, key.getName());
+            update(digest, dictionary.getItem(key));
+        }
+        path.remove(dictionary);
+    }
+    
+    private void update(MessageDigest digest, InputStream input) throws IOException {
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+    }
+    
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // Length-prefixed, so adjacent values cannot run into each other
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+}
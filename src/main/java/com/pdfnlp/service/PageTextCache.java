@@ -0,0 +1,426 @@
+package com.pdfnlp.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * On-disk cache of the text PDFBox extracted from each page, keyed by the SHA-256 of the
+ * PDF file. A hit lets the processor rebuild chunks without PDDocument.load and
+ * PDFTextStripper, e.g. when the index is rebuilt after an analyzer change.
+ *
+ * Each document is one file that is memory-mapped on read:
+ * <pre>
+ * int magic | int pageCount | int[2 * pageCount + 1] offsets | UTF-8 data
+ * </pre>
+ * where string 2i is the PageHasher hash and string 2i+1 the text of page i+1.
+ * The cache is bounded by total file size and evicts the least recently used documents;
+ * file modification times carry the LRU order across restarts.
+ *
+ * Writes and deletions are best-effort. Where a file cannot be deleted or replaced while
+ * it is memory-mapped (Windows), eviction leaves the file for a later attempt and a failed
+ * write just leaves the document uncached.
+ */
+public class PageTextCache {
+    private static final Logger logger = LoggerFactory.getLogger(PageTextCache.class);
+    private static final String FILE_SUFFIX = ".pages";
+    // Version 2 holds PageHasher hashes; version 1 files only hashed the content streams
+    private static final int MAGIC = 0x50544332; // "PTC2"
+
+    private final File cacheDir;
+    private final long maxBytes;
+
+    // Guarded by this; access-ordered so the eldest entry is the least recently used
+    private final LinkedHashMap<String, Long> entrySizes = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long totalBytes;
+    // Guarded by this; evicted or dropped documents whose file could not be deleted yet
+    private final Set<String> pendingDeletes = new HashSet<String>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes upper bound on the total size of the cache files; 0 disables the cache
+     */
+    public PageTextCache(File cacheDir, long maxBytes) throws IOException {
+        this.cacheDir = cacheDir;
+        this.maxBytes = Math.max(0, maxBytes);
+        if (this.maxBytes > 0) {
+            loadEntries();
+        }
+    }
+
+    private void loadEntries() throws IOException {
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            throw new IOException("Cannot create page text cache directory " + cacheDir);
+        }
+
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Oldest first, so insertion order matches the persisted LRU order
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+
+        synchronized (this) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(FILE_SUFFIX)) {
+                    entrySizes.put(name.substring(0, name.length() - FILE_SUFFIX.length()), file.length());
+                    totalBytes += file.length();
+                } else if (name.endsWith(".tmp")) {
+                    // Left over from an interrupted write
+                    deleteQuietly(file);
+                }
+            }
+            evictOverflow(null);
+        }
+        logger.info("Page text cache: {} documents, {} bytes in {}", entrySizes.size(), totalBytes, cacheDir);
+    }
+
+    /**
+     * @return the cached pages of the document, or null if it is not cached
+     */
+    public Entry get(String contentHash) {
+        synchronized (this) {
+            if (entrySizes.get(contentHash) == null) {
+                misses.increment();
+                return null;
+            }
+        }
+
+        File file = cacheFile(contentHash);
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            MappedByteBuffer buffer;
+            try {
+                // The mapping stays valid after the channel is closed
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                channel.close();
+            }
+            if (buffer.capacity() < 8 || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Corrupt page text cache file " + file);
+            }
+            file.setLastModified(System.currentTimeMillis());
+            hits.increment();
+            return new Entry(buffer);
+        } catch (IOException e) {
+            logger.warn("Dropping unreadable page text cache entry {}", file, e);
+            remove(contentHash);
+            misses.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Starts storing the pages of a document, which are then passed to the writer one at a
+     * time. Documents larger than the whole cache are not stored, and neither are documents
+     * whose file cannot be written; failures are only logged.
+     *
+     * @return the writer, or null if the cache is disabled or no file can be created
+     */
+    public Writer openWriter(String contentHash, int pageCount) {
+        if (maxBytes == 0) {
+            return null;
+        }
+        try {
+            return new Writer(contentHash, pageCount);
+        } catch (IOException e) {
+            logger.warn("Could not create page text cache entry {}, document not cached: {}", contentHash, e.toString());
+            return null;
+        }
+    }
+
+    // Moves a complete temporary file into place
+    private synchronized void install(File tempFile, String contentHash, long fileBytes) throws IOException {
+        // Under the lock, so a retried deletion cannot remove the new file
+        Files.move(tempFile.toPath(), cacheFile(contentHash).toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        pendingDeletes.remove(contentHash);
+        Long previousSize = entrySizes.put(contentHash, fileBytes);
+        totalBytes += fileBytes - (previousSize != null ? previousSize : 0);
+        retryDeletes();
+        evictOverflow(contentHash);
+    }
+
+    // Caller holds the lock
+    private void evictOverflow(String keep) {
+        Iterator<Map.Entry<String, Long>> iterator = entrySizes.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            evictions.increment();
+            // Readers that already mapped the file keep their mapping
+            deleteOrDefer(eldest.getKey());
+        }
+    }
+
+    private synchronized void remove(String contentHash) {
+        Long size = entrySizes.remove(contentHash);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        deleteOrDefer(contentHash);
+    }
+
+    // Caller holds the lock
+    private void deleteOrDefer(String contentHash) {
+        if (!deleteQuietly(cacheFile(contentHash))) {
+            logger.debug("Page text cache file {} is in use, deleting it later", contentHash);
+            pendingDeletes.add(contentHash);
+        }
+    }
+
+    // Caller holds the lock; the files are not counted in totalBytes any more
+    private void retryDeletes() {
+        Iterator<String> iterator = pendingDeletes.iterator();
+        while (iterator.hasNext()) {
+            if (deleteQuietly(cacheFile(iterator.next()))) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return false if the file still exists
+     */
+    private static boolean deleteQuietly(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private File cacheFile(String contentHash) {
+        return new File(cacheDir, contentHash + FILE_SUFFIX);
+    }
+
+    private static byte[] encode(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public synchronized int getDocumentCount() {
+        return entrySizes.size();
+    }
+
+    public synchronized long getSizeBytes() {
+        return totalBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("PageTextCache{documents=%d, bytes=%d/%d, hits=%d, misses=%d, evictions=%d}",
+            entrySizes.size(), totalBytes, maxBytes, hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    /**
+     * Writes one document page by page, so only the page being added is held in memory. The
+     * data is spooled to a temporary file behind room for the header, which commit() fills
+     * in before moving the file into place. Not thread-safe; pages are added in page order.
+     */
+    public class Writer implements Closeable {
+        private final String contentHash;
+        private final int pageCount;
+        private final int headerBytes;
+        // Offsets of string i and i+1 are entries i and i+1
+        private final int[] offsets;
+        private final File tempFile;
+        private final FileOutputStream fileOut;
+        private final OutputStream out;
+        private int strings;
+        private long dataBytes;
+        // Set once the document cannot be cached any more
+        private boolean abandoned;
+        private boolean closed;
+
+        private Writer(String contentHash, int pageCount) throws IOException {
+            this.contentHash = contentHash;
+            this.pageCount = pageCount;
+            this.headerBytes = 8 + 4 * (2 * pageCount + 1);
+            this.offsets = new int[2 * pageCount + 1];
+            // Concurrent writers of the same document each use their own temporary file
+            this.tempFile = File.createTempFile(contentHash, ".tmp", cacheDir);
+            this.fileOut = new FileOutputStream(tempFile);
+            fileOut.getChannel().position(headerBytes);
+            this.out = new BufferedOutputStream(fileOut);
+        }
+
+        /**
+         * @param pageHash PageHasher hash of the next page
+         * @param pageText extracted text of the next page
+         */
+        public void addPage(String pageHash, String pageText) {
+            if (abandoned) {
+                return;
+            }
+            if (strings == offsets.length - 1) {
+                abandon("more than " + pageCount + " pages added");
+                return;
+            }
+            byte[] hash = encode(pageHash);
+            byte[] text = encode(pageText);
+            dataBytes += hash.length + text.length;
+            if (headerBytes + dataBytes > maxBytes || headerBytes + dataBytes > Integer.MAX_VALUE) {
+                logger.debug("Document {} exceeds the page text cache, not cached", contentHash);
+                abandoned = true;
+                return;
+            }
+            try {
+                out.write(hash);
+                offsets[++strings] = (int) (dataBytes - text.length);
+                out.write(text);
+                offsets[++strings] = (int) dataBytes;
+            } catch (IOException e) {
+                abandon(e.toString());
+            }
+        }
+
+        /**
+         * Writes the header and stores the document once every page has been added
+         */
+        public void commit() {
+            if (abandoned || closed) {
+                return;
+            }
+            if (strings != offsets.length - 1) {
+                abandon((strings / 2) + " of " + pageCount + " pages added");
+                return;
+            }
+            try {
+                out.flush();
+                ByteBuffer header = ByteBuffer.allocate(headerBytes);
+                header.putInt(MAGIC);
+                header.putInt(pageCount);
+                for (int offset : offsets) {
+                    header.putInt(offset);
+                }
+                header.flip();
+                FileChannel channel = fileOut.getChannel();
+                long position = 0;
+                while (header.hasRemaining()) {
+                    position += channel.write(header, position);
+                }
+                out.close();
+                install(tempFile, contentHash, headerBytes + dataBytes);
+            } catch (IOException e) {
+                // Typically the file is still mapped by a reader and cannot be replaced (Windows)
+                abandon(e.toString());
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Discards the document unless it has been committed; idempotent
+         */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.debug("Error closing page text cache file {}", tempFile, e);
+            }
+            deleteQuietly(tempFile);
+        }
+
+        private void abandon(String reason) {
+            logger.warn("Could not write page text cache entry {}, document not cached: {}", contentHash, reason);
+            abandoned = true;
+        }
+    }
+
+    /**
+     * Read-only view of one cached document. Strings are decoded from the mapping on
+     * each call, so an entry costs no heap beyond the pages actually read.
+     */
+    public static class Entry {
+        private final ByteBuffer buffer;
+        private final int pageCount;
+        private final int dataStart;
+
+        Entry(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.pageCount = buffer.getInt(4);
+            this.dataStart = 8 + 4 * (2 * pageCount + 1);
+        }
+
+        public int getPageCount() {
+            return pageCount;
+        }
+
+        public String getPageHash(int pageNumber) {
+            return string(2 * (pageNumber - 1));
+        }
+
+        public String getPageText(int pageNumber) {
+            return string(2 * (pageNumber - 1) + 1);
+        }
+
+        public List<String> getPageHashes() {
+            List<String> pageHashes = new ArrayList<String>(pageCount);
+            for (int pageNum = 1; pageNum <= pageCount; pageNum++) {
+                pageHashes.add(getPageHash(pageNum));
+            }
+            return pageHashes;
+        }
+
+        private String string(int index) {
+            int start = buffer.getInt(8 + 4 * index);
+            int end = buffer.getInt(8 + 4 * (index + 1));
+            byte[] bytes = new byte[end - start];
+            // Absolute reads on a duplicate keep concurrent readers independent
+            ByteBuffer view = buffer.duplicate();
+            view.position(dataStart + start);
+            view.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.pdfnlp.service;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.analysis.ngram.EdgeNGramTokenFilter;
+
+/**
+ * Indexes every prefix (edge n-gram) of the tokens produced by a delegate analyzer,
+ * so a prefix match becomes a single term lookup instead of a term dictionary scan.
+ * Query terms for prefix fields must not be analyzed with this analyzer; they are
+ * looked up as-is with a TermQuery.
+ */
+public class PrefixAnalyzer extends AnalyzerWrapper {
+    private final Analyzer delegate;
+    private final int minGram;
+    private final int maxGram;
+    
+    public PrefixAnalyzer(Analyzer delegate, int minGram, int maxGram) {
+        super(Analyzer.GLOBAL_REUSE_STRATEGY);
+        this.delegate = delegate;
+        this.minGram = minGram;
+        this.maxGram = maxGram;
+    }
+    
+    @Override
+    protected Analyzer getWrappedAnalyzer(String fieldName) {
+        return delegate;
+    }
+    
+    @Override
+    protected TokenStreamComponents wrapComponents(String fieldName, TokenStreamComponents components) {
+        // preserveOriginal keeps tokens longer than maxGram so they stay searchable as whole terms
+        return new TokenStreamComponents(components.getSource(),
+            new EdgeNGramTokenFilter(components.getTokenStream(), minGram, maxGram, true));
+    }
+    
+    public int getMinGram() {
+        return minGram;
+    }
+    
+    public int getMaxGram() {
+        return maxGram;
+    }
+}
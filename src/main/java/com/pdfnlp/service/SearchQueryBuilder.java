@@ -0,0 +1,173 @@
+package com.pdfnlp.service;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.FeatureField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Builds the search query directly as Lucene objects from the analyzed query parts,
+ * replacing string concatenation + QueryParser.
+ *
+ * Every distinct (field, term) pair becomes one boosted TermQuery, so terms repeated across
+ * the raw query and the processed query are scored once. The processed query only goes to
+ * the fields flagged for it: a field whose analyzer already does the TTTT processing gets
+ * the raw query, as analyzing processed text again would split its morphemes twice. Query terms found among the keywords
+ * picked for a chunk at index time add their keyword weight times keywordBoost to its score.
+ * Keywords of the query get constant-score prefix clauses on the edge n-gram fields. Clauses
+ * are added in priority order (query terms, processed terms, keyword features, keyword
+ * prefixes) up to maxClauses.
+ *
+ * Immutable and thread-safe; the analyzer reuses its token streams per thread.
+ */
+public class SearchQueryBuilder {
+    private final Analyzer analyzer;
+    private final String[] fields;
+    private final float[] boosts;
+    private final boolean[] processedQueryFields;
+    private final String[] prefixFields;
+    private final int prefixMaxGram;
+    private final String keywordField;
+    private final float keywordBoost;
+    private final int maxClauses;
+    
+    /**
+     * @param processedQueryFields whether each entry of fields is also searched with the
+     *                             processed query, in the same order
+     * @param prefixFields edge n-gram field for each entry of fields, in the same order
+     * @param keywordField FeatureField of the index-time keywords; the analyzer must produce
+     *                     the terms the keywords were indexed with for it
+     */
+    public SearchQueryBuilder(Analyzer analyzer, String[] fields, float[] boosts, boolean[] processedQueryFields,
+                              String[] prefixFields, int prefixMaxGram,
+                              String keywordField, float keywordBoost, int maxClauses) {
+        this.analyzer = analyzer;
+        this.fields = fields.clone();
+        this.boosts = boosts.clone();
+        this.processedQueryFields = processedQueryFields.clone();
+        this.prefixFields = prefixFields.clone();
+        this.prefixMaxGram = prefixMaxGram;
+        this.keywordField = keywordField;
+        this.keywordBoost = keywordBoost;
+        this.maxClauses = Math.min(maxClauses, BooleanQuery.getMaxClauseCount());
+    }
+    
+    public Query build(String query, String processedQuery, List<String> keywords) throws IOException {
+        ClauseCollector clauses = new ClauseCollector();
+        
+        addTermClauses(query, false, clauses);
+        addTermClauses(processedQuery, true, clauses);
+        addKeywordClauses(query, clauses);
+        
+        // Prefix matches for compound words via the edge n-gram fields
+        Set<String> prefixes = new LinkedHashSet<String>();
+        for (String keyword : keywords) {
+            if (keyword.length() >= 2) {
+                prefixes.add(keyword.toLowerCase(Locale.ROOT));
+            }
+        }
+        for (String prefix : prefixes) {
+            for (int i = 0; i < fields.length; i++) {
+                clauses.add(buildPrefixQuery(i, prefix));
+            }
+        }
+        
+        return clauses.build();
+    }
+    
+    private void addTermClauses(String text, boolean processed, ClauseCollector clauses) throws IOException {
+        if (text == null || text.isEmpty() || clauses.isFull()) {
+            return;
+        }
+        for (int i = 0; i < fields.length; i++) {
+            if (processed && !processedQueryFields[i]) {
+                continue;
+            }
+            TokenStream stream = analyzer.tokenStream(fields[i], text);
+            try {
+                CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+                stream.reset();
+                while (stream.incrementToken()) {
+                    String term = termAtt.toString();
+                    if (clauses.isNew(fields[i], term)) {
+                        Query termQuery = new TermQuery(new Term(fields[i], term));
+                        clauses.add(boosts[i] == 1.0f ? termQuery : new BoostQuery(termQuery, boosts[i]));
+                    }
+                }
+                stream.end();
+            } finally {
+                stream.close();
+            }
+        }
+    }
+    
+    /**
+     * Boosts chunks by the index-time weight of each query term among their keywords,
+     * instead of matching the extracted query keywords against the text
+     */
+    private void addKeywordClauses(String text, ClauseCollector clauses) throws IOException {
+        if (text == null || text.isEmpty() || clauses.isFull()) {
+            return;
+        }
+        TokenStream stream = analyzer.tokenStream(keywordField, text);
+        try {
+            CharTermAttribute termAtt = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                String term = termAtt.toString();
+                if (clauses.isNew(keywordField, term)) {
+                    clauses.add(FeatureField.newLinearQuery(keywordField, term, keywordBoost));
+                }
+            }
+            stream.end();
+        } finally {
+            stream.close();
+        }
+    }
+    
+    /**
+     * Matches chunks containing a term that starts with the prefix. Scored as a constant,
+     * like a rewritten wildcard query.
+     */
+    private Query buildPrefixQuery(int fieldIndex, String prefix) {
+        Query fieldQuery = prefix.length() <= prefixMaxGram
+            ? new TermQuery(new Term(prefixFields[fieldIndex], prefix))
+            // Longer than any indexed gram: fall back to a term dictionary scan
+            : new PrefixQuery(new Term(fields[fieldIndex], prefix));
+        return new ConstantScoreQuery(fieldQuery);
+    }
+    
+    private class ClauseCollector {
+        private final BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        private final Set<String> seenTerms = new HashSet<String>();
+        private int count;
+        
+        boolean isNew(String field, String term) {
+            return seenTerms.add(field + '\u0000' + term);
+        }
+        
+        boolean isFull() {
+            return count >= maxClauses;
+        }
+        
+        void add(Query query) {
+            if (count < maxClauses) {
+                builder.add(query, BooleanClause.Occur.SHOULD);
+                count++;
+            }
+        }
+        
+        Query build() {
+            return builder.build();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.pdfnlp.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps recorded searchers open by version so cursor pages can return to the snapshot of
+ * their first page, like Lucene's SearcherLifetimeManager, which only accepts searchers of
+ * a single DirectoryReader. A snapshot is released once it has not been used for the
+ * prune age.
+ */
+class SearcherSnapshots implements Closeable {
+    private final ConcurrentMap<Long, Snapshot> snapshots = new ConcurrentHashMap<Long, Snapshot>();
+    
+    /**
+     * @return the version to acquire the searcher with later
+     */
+    long record(ShardedSearcher searcher) {
+        long version = searcher.getVersion();
+        Snapshot snapshot = snapshots.get(version);
+        if (snapshot == null) {
+            searcher.getIndexReader().incRef();
+            Snapshot created = new Snapshot(searcher);
+            snapshot = snapshots.putIfAbsent(version, created);
+            if (snapshot != null) {
+                release(searcher);
+            }
+        }
+        if (snapshot != null) {
+            snapshot.touch();
+        }
+        return version;
+    }
+    
+    /**
+     * @return the searcher of that version, to be released, or null if it was pruned
+     */
+    ShardedSearcher acquire(long version) {
+        Snapshot snapshot = snapshots.get(version);
+        if (snapshot == null || !snapshot.searcher.getIndexReader().tryIncRef()) {
+            return null;
+        }
+        snapshot.touch();
+        return snapshot.searcher;
+    }
+    
+    void release(ShardedSearcher searcher) {
+        try {
+            searcher.getIndexReader().decRef();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to close searcher snapshot", e);
+        }
+    }
+    
+    void prune(double maxAgeSeconds) {
+        long oldest = System.nanoTime() - (long) (maxAgeSeconds * 1e9);
+        Iterator<Map.Entry<Long, Snapshot>> iterator = snapshots.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Snapshot> entry = iterator.next();
+            if (entry.getValue().lastUsedNanos - oldest < 0 && snapshots.remove(entry.getKey(), entry.getValue())) {
+                release(entry.getValue().searcher);
+            }
+        }
+    }
+    
+    @Override
+    public void close() {
+        prune(-1);
+    }
+    
+    private static final class Snapshot {
+        private final ShardedSearcher searcher;
+        private volatile long lastUsedNanos = System.nanoTime();
+        
+        Snapshot(ShardedSearcher searcher) {
+            this.searcher = searcher;
+        }
+        
+        void touch() {
+            lastUsedNanos = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.pdfnlp.service;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermStates;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermStatistics;
+import org.apache.lucene.search.TopDocs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Searcher over one point-in-time reader per index shard. Document ids, stored fields and
+ * statistics are those of a MultiReader over all shards, so callers see a single index.
+ * searchAfter (and with it search) runs the query on every shard in parallel and merges
+ * the shard top docs with TopDocs.merge; each shard scores with index-wide term and field
+ * statistics, so the merged scores equal those of a single index. The index-wide term
+ * statistics are built once per query and shared by the shards.
+ */
+class ShardedSearcher extends IndexSearcher {
+    private final DirectoryReader[] shardReaders;
+    private final Executor searchExecutor;
+    private final int[] docBases;
+    private final ExecutorService shardExecutor;
+    private final long version;
+    
+    /**
+     * @param shardReaders  the reader of each shard; the searcher takes its own references
+     * @param searchExecutor executor searching the segments of one shard in parallel, may be null
+     * @param shardExecutor  executor of the shard fan-out, may be null to search shards sequentially
+     */
+    ShardedSearcher(DirectoryReader[] shardReaders, Executor searchExecutor, ExecutorService shardExecutor) throws IOException {
+        super(new MultiReader(shardReaders, false), searchExecutor);
+        this.shardReaders = shardReaders.clone();
+        this.searchExecutor = searchExecutor;
+        this.shardExecutor = shardExecutor;
+        this.docBases = new int[shardReaders.length];
+        
+        int docBase = 0;
+        long versionSum = 0;
+        for (int i = 0; i < shardReaders.length; i++) {
+            docBases[i] = docBase;
+            docBase += shardReaders[i].maxDoc();
+            versionSum += shardReaders[i].getVersion();
+        }
+        this.version = versionSum;
+    }
+    
+    /**
+     * Identifies this point-in-time view: shard versions only grow, so the sum changes with
+     * every change of any shard
+     */
+    long getVersion() {
+        return version;
+    }
+    
+    DirectoryReader[] getShardReaders() {
+        return shardReaders.clone();
+    }
+    
+    @Override
+    public TopDocs searchAfter(final ScoreDoc after, final Query query, final int numHits) throws IOException {
+        if (shardReaders.length == 1) {
+            return super.searchAfter(after, query, numHits);
+        }
+        final int afterShard = after != null ? ReaderUtil.subIndex(after.doc, docBases) : -1;
+        final Map<Term, TermStates> termStates = new ConcurrentHashMap<Term, TermStates>();
+        
+        TopDocs[] shardHits = new TopDocs[shardReaders.length];
+        @SuppressWarnings("unchecked")
+        Future<TopDocs>[] pending = (Future<TopDocs>[]) new Future<?>[shardReaders.length];
+        try {
+            // The calling thread searches the first shard itself
+            for (int i = 1; i < shardReaders.length && shardExecutor != null; i++) {
+                final int shard = i;
+                pending[i] = shardExecutor.submit(new Callable<TopDocs>() {
+                    @Override
+                    public TopDocs call() throws IOException {
+                        return searchShard(shard, termStates, after, afterShard, query, numHits);
+                    }
+                });
+            }
+            for (int i = 0; i < shardReaders.length; i++) {
+                shardHits[i] = pending[i] != null
+                    ? pending[i].get()
+                    : searchShard(i, termStates, after, afterShard, query, numHits);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while searching index shards");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException("Shard search failed", e.getCause());
+        } finally {
+            // No interrupts: NIOFSDirectory closes its channel when a read is interrupted.
+            // Shard searches that already started are waited for, as the caller may release
+            // the readers as soon as this returns.
+            for (Future<TopDocs> future : pending) {
+                if (future != null && !future.cancel(false)) {
+                    awaitQuietly(future);
+                }
+            }
+        }
+        
+        // Ties are broken by shard and then by document, i.e. by the global document id
+        TopDocs merged = TopDocs.merge(numHits, shardHits);
+        for (ScoreDoc scoreDoc : merged.scoreDocs) {
+            scoreDoc.doc += docBases[scoreDoc.shardIndex];
+            scoreDoc.shardIndex = -1;
+        }
+        return merged;
+    }
+    
+    /**
+     * Translates the global cursor into the shard: shards before the cursor's shard skip all
+     * hits scoring the same as the cursor, later shards keep them all
+     */
+    private TopDocs searchShard(int shard, Map<Term, TermStates> termStates, ScoreDoc after, int afterShard,
+                                Query query, int numHits) throws IOException {
+        ScoreDoc shardAfter = null;
+        if (after != null) {
+            int shardDoc;
+            if (shard < afterShard) {
+                shardDoc = shardReaders[shard].maxDoc() - 1;
+            } else if (shard > afterShard) {
+                shardDoc = -1;
+            } else {
+                shardDoc = after.doc - docBases[shard];
+            }
+            shardAfter = new ScoreDoc(shardDoc, after.score);
+        }
+        return new ShardSearcher(shardReaders[shard], searchExecutor, termStates).searchAfter(shardAfter, query, numHits);
+    }
+    
+    /**
+     * Waits for the task to finish, ignoring its outcome; keeps a pending interrupt
+     */
+    static void awaitQuietly(Future<?> future) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                future.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException | RuntimeException e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Searcher of one shard for one query. Created per query, as it shares the index-wide
+     * term states built for that query with the other shards.
+     */
+    private final class ShardSearcher extends IndexSearcher {
+        private final Map<Term, TermStates> termStates;
+        
+        ShardSearcher(IndexReader reader, Executor executor, Map<Term, TermStates> termStates) {
+            super(reader, executor);
+            this.termStates = termStates;
+        }
+        
+        @Override
+        public TermStatistics termStatistics(Term term, int docFreq, long totalTermFreq) throws IOException {
+            TermStates indexWide = termStates.get(term);
+            if (indexWide == null) {
+                // Shards asking at the same time may both build it; either result is the same
+                indexWide = TermStates.build(ShardedSearcher.this.getTopReaderContext(), term, true);
+                termStates.put(term, indexWide);
+            }
+            if (indexWide.docFreq() == 0) {
+                return null;
+            }
+            return ShardedSearcher.this.termStatistics(term, indexWide.docFreq(), indexWide.totalTermFreq());
+        }
+        
+        @Override
+        public CollectionStatistics collectionStatistics(String field) throws IOException {
+            return ShardedSearcher.this.collectionStatistics(field);
+        }
+    }
+}
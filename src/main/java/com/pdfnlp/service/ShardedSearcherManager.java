@@ -0,0 +1,98 @@
+package com.pdfnlp.service;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.ReferenceManager;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * SearcherManager for a sharded index: keeps a ShardedSearcher over the NRT readers of all
+ * shard writers and, on refresh, reopens only the shards that changed. Readers of unchanged
+ * shards are shared between consecutive searchers.
+ */
+class ShardedSearcherManager extends ReferenceManager<ShardedSearcher> {
+    private final IndexWriter[] writers;
+    private final Executor searchExecutor;
+    private final ExecutorService shardExecutor;
+    
+    ShardedSearcherManager(IndexWriter[] writers, Executor searchExecutor, ExecutorService shardExecutor) throws IOException {
+        this.writers = writers.clone();
+        this.searchExecutor = searchExecutor;
+        this.shardExecutor = shardExecutor;
+        
+        DirectoryReader[] readers = new DirectoryReader[writers.length];
+        try {
+            for (int i = 0; i < writers.length; i++) {
+                readers[i] = DirectoryReader.open(writers[i]);
+            }
+        } catch (IOException | RuntimeException e) {
+            decRefAll(readers);
+            throw e;
+        }
+        this.current = newSearcher(readers);
+    }
+    
+    @Override
+    protected ShardedSearcher refreshIfNeeded(ShardedSearcher referenceToRefresh) throws IOException {
+        DirectoryReader[] previous = referenceToRefresh.getShardReaders();
+        DirectoryReader[] readers = new DirectoryReader[previous.length];
+        boolean changed = false;
+        try {
+            for (int i = 0; i < previous.length; i++) {
+                DirectoryReader reopened = DirectoryReader.openIfChanged(previous[i], writers[i]);
+                if (reopened == null) {
+                    previous[i].incRef();
+                    readers[i] = previous[i];
+                } else {
+                    readers[i] = reopened;
+                    changed = true;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            decRefAll(readers);
+            throw e;
+        }
+        if (!changed) {
+            decRefAll(readers);
+            return null;
+        }
+        return newSearcher(readers);
+    }
+    
+    /**
+     * Hands one reference of each reader to the new searcher's MultiReader
+     */
+    private ShardedSearcher newSearcher(DirectoryReader[] readers) throws IOException {
+        try {
+            return new ShardedSearcher(readers, searchExecutor, shardExecutor);
+        } finally {
+            decRefAll(readers);
+        }
+    }
+    
+    private static void decRefAll(DirectoryReader[] readers) throws IOException {
+        for (DirectoryReader reader : readers) {
+            if (reader != null) {
+                reader.decRef();
+            }
+        }
+    }
+    
+    @Override
+    protected boolean tryIncRef(ShardedSearcher reference) {
+        return reference.getIndexReader().tryIncRef();
+    }
+    
+    @Override
+    protected void decRef(ShardedSearcher reference) throws IOException {
+        reference.getIndexReader().decRef();
+    }
+    
+    @Override
+    protected int getRefCount(ShardedSearcher reference) {
+        return reference.getIndexReader().getRefCount();
+    }
+}
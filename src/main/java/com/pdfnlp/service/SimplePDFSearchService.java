@@ -1,200 +1,1510 @@
 package com.pdfnlp.service;
 
+import com.pdfnlp.model.CacheStats;
+import com.pdfnlp.model.IngestReport;
+import com.pdfnlp.model.ManifestEntry;
 import com.pdfnlp.model.PDFChunk;
+import com.pdfnlp.model.SearchCursor;
+import com.pdfnlp.model.SearchHit;
+import com.pdfnlp.model.SearchPage;
 import com.pdfnlp.model.SearchResult;
+import com.pdfnlp.util.BoundedCache;
+import com.pdfnlp.util.Counter;
+import com.pdfnlp.util.Hashing;
+import com.pdfnlp.util.LatencyHistogram;
+import com.pdfnlp.util.Metrics;
+import com.pdfnlp.util.NamedThreadFactory;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.lucene87.Lucene87Codec;
 import org.apache.lucene.document.*;
 import org.apache.lucene.index.*;
-import org.apache.lucene.index.IndexNotFoundException;
-import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
-import org.apache.lucene.queryparser.classic.ParseException;
-import org.apache.lucene.queryparser.classic.QueryParser;
 import org.apache.lucene.search.*;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Version;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
+/**
+ * PDF indexing and search service.
+ *
+ * Thread-safety: search() and getIndexedDocumentCount() may be called from any number of
+ * threads concurrently, also while indexPDF, indexDirectory or an IngestQueue run. Each search
+ * acquires its own reference-counted searcher snapshot, and the analyzer, query builder and
+ * OpenNLP processor are immutable and shared.
+ */
 public class SimplePDFSearchService {
     private static final Logger logger = LoggerFactory.getLogger(SimplePDFSearchService.class);
+    private static final String[] SEARCH_FIELDS = {"content", "processedContent"};
+    private static final float[] SEARCH_FIELD_BOOSTS = {2.0f, 1.5f};
+    // processedContent analyzes the raw query like the indexed text, so only content gets the processed query
+    private static final boolean[] PROCESSED_QUERY_FIELDS = {true, false};
+    private static final int MAX_QUERY_CLAUSES = 256;
     
-    private IndexWriter indexWriter;
-    private IndexSearcher indexSearcher;
+    // Edge n-gram companions of the search fields, used for keyword prefix matching
+    private static final String[] PREFIX_FIELDS = {"contentPrefix", "processedContentPrefix"};
+    private static final int PREFIX_MIN_GRAM = 2;
+    private static final int PREFIX_MAX_GRAM = 20;
+    private static final FieldType PREFIX_FIELD_TYPE = createPrefixFieldType();
+    
+    // Content postings with offsets let the highlighter locate matches without re-analysis
+    private static final FieldType CONTENT_OFFSETS_FIELD_TYPE = createContentFieldType(true);
+    private static final FieldType CONTENT_OFFSETS_UNSTORED_FIELD_TYPE = createContentFieldType(false);
+    
+    private static final int SNIPPET_FRAGMENT_SIZE = 160;
+    private static final String HIGHLIGHT_PRE_TAG = "<em>";
+    private static final String HIGHLIGHT_POST_TAG = "</em>";
+    
+    // Returned by addPDFChunks when the file matches its manifest entry
+    static final int UNCHANGED = -1;
+    
+    private static final IndexLayout DEFAULT_LAYOUT = IndexLayout.COMPACT;
+    private static final String LAYOUT_COMMIT_KEY = "indexLayout";
+    private static final int PATH_LOCK_STRIPES = 64;
+    
+    // Stored fields a search result needs; the rest of the document is never decompressed
+    private static final Set<String> RESULT_FIELDS = new HashSet<String>(
+        Arrays.asList("content", "pageNumber", "fileName", "filePath", "chunkIndex", "overlapLength"));
+    private static final Set<String> HIT_FIELDS = new HashSet<String>(
+        Arrays.asList("pageNumber", "fileName", "filePath", "chunkIndex"));
+    private static final long TEXT_CACHE_MAX_BYTES = 512L * 1024 * 1024;
+    
+    private static final LatencyHistogram APPLY_FILE_TIME = Metrics.histogram("ingest.applyFile");
+    private static final LatencyHistogram COMMIT_TIME = Metrics.histogram("index.commit");
+    private static final LatencyHistogram REFRESH_TIME = Metrics.histogram("index.refresh");
+    private static final LatencyHistogram QUERY_BUILD_TIME = Metrics.histogram("search.queryBuild");
+    private static final LatencyHistogram SEARCH_TIME = Metrics.histogram("search.execute");
+    private static final Counter INDEXED_FILES = Metrics.counter("ingest.files");
+    private static final Counter SKIPPED_FILES = Metrics.counter("ingest.skippedFiles");
+    private static final Counter FAILED_FILES = Metrics.counter("ingest.failedFiles");
+    private static final Counter QUERIES = Metrics.counter("search.queries");
+    private static final Counter RESULT_CACHE_HITS = Metrics.counter("search.resultCacheHits");
+    
+    private static final int RESULT_CACHE_SIZE = 1024;
+    // How long the snapshot of a cursor is kept after its last page was fetched
+    private static final double CURSOR_MAX_AGE_SECONDS = 600.0;
+    private static final String SHARD_DIR_PREFIX = "shard-";
+    private static final String MANIFEST_FILE_NAME = "manifest.json";
+    
+    // Chunk embeddings are computed from the words of the standard-analyzed text
+    private static final String VECTOR_FIELD = "content";
+    private static final long VECTOR_SAMPLE_SEED = 42L;
+    // Hits taken from each side of a hybrid search before fusing
+    private static final int HYBRID_CANDIDATES = 100;
+    private static final LatencyHistogram VECTOR_SEARCH_TIME = Metrics.histogram("search.vector");
+    private static final LatencyHistogram VECTOR_BUILD_TIME = Metrics.histogram("vector.build");
+    
+    // Weighted keywords picked per chunk at index time, boosted at query time as features
+    private static final String KEYWORD_FIELD = "keywords";
+    private static final String KEYWORD_SOURCE_FIELD = "processedContent";
+    private static final int KEYWORDS_PER_CHUNK = 10;
+    private static final float KEYWORD_BOOST = 2.0f;
+    private static final LatencyHistogram KEYWORD_EXTRACT_TIME = Metrics.histogram("ingest.keywords");
+    
+    // One writer per shard; a file's chunks all go to the shard its name hashes to
+    private IndexWriter[] shardWriters;
+    private ShardedSearcherManager searcherManager;
+    // Striped by file path, so updates of the same file run one at a time
+    private final Object[] pathLocks = newLocks(PATH_LOCK_STRIPES);
+    private final Object commitLock = new Object();
+    private final SearcherSnapshots cursorSearchers = new SearcherSnapshots();
+    private CorpusKeywordExtractor keywordExtractor;
+    private ScheduledExecutorService refresher;
+    private ExecutorService searchExecutor;
+    private ExecutorService shardExecutor;
+    // Runs the extraction of a file while its chunks are being indexed
+    private final ExecutorService chunkProducers = Executors.newCachedThreadPool(new NamedThreadFactory("chunk-producer"));
     private PDFProcessor pdfProcessor;
-    private OpenNLP8TTTTProcessor textAnalyzer;
+    private IndexManifest indexManifest;
+    private IndexLayout layout;
+    private final IndexConfig indexConfig;
+    private final File vectorIndexFile;
+    // Replaced as a whole by buildVectorIndex; null until one has been built
+    private volatile VectorIndex vectorIndex;
+    // Serializes builds only; the service monitor guards the bulk load profile
+    private final Object vectorBuildLock = new Object();
+    // Directory ingests currently running with the bulk profile
+    private int bulkLoads;
+    private final OpenNLP8TTTTProcessor textAnalyzer = new OpenNLP8TTTTProcessor();
     
+    // Analyzers reuse their token streams per thread, so one instance serves all searches.
+    // processedContent is analyzed by the TTTT chain both at index and at query time.
+    private final Analyzer analyzer = createAnalyzer(textAnalyzer);
+    private final SearchQueryBuilder queryBuilder = new SearchQueryBuilder(
+        analyzer, SEARCH_FIELDS, SEARCH_FIELD_BOOSTS, PROCESSED_QUERY_FIELDS, PREFIX_FIELDS, PREFIX_MAX_GRAM,
+        KEYWORD_FIELD, KEYWORD_BOOST, MAX_QUERY_CLAUSES);
+    private final OffsetsHighlighter highlighter = new OffsetsHighlighter(
+        analyzer, "content", SNIPPET_FRAGMENT_SIZE, HIGHLIGHT_PRE_TAG, HIGHLIGHT_POST_TAG);
+    
+    // Results of recent queries, valid only for the reader version they were computed on
+    private final BoundedCache<ResultCacheKey, List<SearchResult>> resultCache =
+        new BoundedCache<ResultCacheKey, List<SearchResult>>(RESULT_CACHE_SIZE);
+    // Newest reader version seen by a search; only moves forward
+    private final AtomicLong resultCacheVersion = new AtomicLong(-1);
+    
+    /**
+     * Service configured by IndexConfig.load(), i.e. pdfnlp.properties and system properties
+     */
     public SimplePDFSearchService() throws IOException {
-        this.pdfProcessor = new PDFProcessor();
-        this.textAnalyzer = new OpenNLP8TTTTProcessor();
-        initializeIndex();
+        this(IndexConfig.load());
+    }
+    
+    public SimplePDFSearchService(IndexConfig indexConfig) throws IOException {
+        this(indexConfig, DEFAULT_LAYOUT);
+    }
+    
+    /**
+     * @param maxStaleSeconds upper bound on how long uncommitted or freshly committed
+     *                        chunks may stay invisible to search
+     * @param searchThreads   threads searching index segments of a single query in parallel;
+     *                        0 searches segments sequentially on the calling thread
+     */
+    public SimplePDFSearchService(double maxStaleSeconds, int searchThreads) throws IOException {
+        this(IndexConfig.load().withSearch(maxStaleSeconds, searchThreads));
+    }
+    
+    /**
+     * @param indexDir directory of the Lucene index, which also holds the manifest; the page
+     *                 text cache is kept next to it
+     */
+    public SimplePDFSearchService(File indexDir, double maxStaleSeconds, int searchThreads) throws IOException {
+        this(indexDir, maxStaleSeconds, searchThreads, DEFAULT_LAYOUT);
+    }
+    
+    /**
+     * @param layout layout of a newly created index; an existing index keeps the layout
+     *               it was created with
+     */
+    public SimplePDFSearchService(File indexDir, double maxStaleSeconds, int searchThreads,
+                                  IndexLayout layout) throws IOException {
+        this(IndexConfig.load().withIndexDir(indexDir).withSearch(maxStaleSeconds, searchThreads), layout);
+    }
+    
+    public SimplePDFSearchService(IndexConfig indexConfig, IndexLayout layout) throws IOException {
+        this.indexConfig = indexConfig;
+        File indexDir = indexConfig.getIndexDir();
+        this.pdfProcessor = new PDFProcessor(Runtime.getRuntime().availableProcessors(),
+            new PageTextCache(new File(indexDir.getPath() + ".textcache"), TEXT_CACHE_MAX_BYTES));
+        if (indexConfig.getSearchThreads() > 0) {
+            this.searchExecutor = Executors.newFixedThreadPool(indexConfig.getSearchThreads(),
+                new NamedThreadFactory("index-search"));
+        }
+        initializeIndex(indexDir, indexConfig.getMaxStaleSeconds(), layout);
+        
+        this.vectorIndexFile = new File(indexDir.getPath() + ".vectors");
+        if (vectorIndexFile.isFile()) {
+            // The shard writers are open by now, so a bad file must not fail the constructor
+            try {
+                this.vectorIndex = VectorIndex.load(vectorIndexFile, analyzer, VECTOR_FIELD);
+                logger.info("Loaded semantic index with {} chunks: {}", vectorIndex.size(), vectorIndexFile);
+            } catch (IOException | RuntimeException e) {
+                logger.error("Unreadable semantic index, starting without one until it is rebuilt: {}", vectorIndexFile, e);
+            }
+        }
+    }
+    
+    static Analyzer createAnalyzer(OpenNLP8TTTTProcessor textAnalyzer) {
+        Analyzer standardAnalyzer = new StandardAnalyzer();
+        Analyzer ttttAnalyzer = new TTTTAnalyzer(textAnalyzer);
+        
+        Map<String, Analyzer> fieldAnalyzers = new HashMap<String, Analyzer>();
+        fieldAnalyzers.put("processedContent", ttttAnalyzer);
+        // Only analyzed at query time; the indexed keywords are processedContent terms
+        fieldAnalyzers.put(KEYWORD_FIELD, ttttAnalyzer);
+        fieldAnalyzers.put("contentPrefix", new PrefixAnalyzer(standardAnalyzer, PREFIX_MIN_GRAM, PREFIX_MAX_GRAM));
+        fieldAnalyzers.put("processedContentPrefix", new PrefixAnalyzer(ttttAnalyzer, PREFIX_MIN_GRAM, PREFIX_MAX_GRAM));
+        return new PerFieldAnalyzerWrapper(standardAnalyzer, fieldAnalyzers);
     }
     
-    private void initializeIndex() throws IOException {
+    /**
+     * Prefix fields only answer "does this chunk contain a term starting with X",
+     * so they carry neither frequencies, positions nor norms
+     */
+    private static FieldType createPrefixFieldType() {
+        FieldType fieldType = new FieldType();
+        fieldType.setTokenized(true);
+        fieldType.setIndexOptions(IndexOptions.DOCS);
+        fieldType.setOmitNorms(true);
+        fieldType.freeze();
+        return fieldType;
+    }
+    
+    private static FieldType createContentFieldType(boolean stored) {
+        FieldType fieldType = new FieldType(stored ? TextField.TYPE_STORED : TextField.TYPE_NOT_STORED);
+        fieldType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        fieldType.freeze();
+        return fieldType;
+    }
+    
+    static Codec createCodec(IndexLayout layout) {
+        return new Lucene87Codec(layout.isBestCompression()
+            ? Lucene87Codec.Mode.BEST_COMPRESSION : Lucene87Codec.Mode.BEST_SPEED);
+    }
+    
+    /**
+     * Layout recorded in the latest commit; indexes from before layouts were recorded
+     * are STANDARD, and an empty or missing index takes the requested layout
+     */
+    private static IndexLayout resolveLayout(FSDirectory directory, IndexLayout requested) throws IOException {
+        if (!DirectoryReader.indexExists(directory)) {
+            return requested;
+        }
+        SegmentInfos commit = SegmentInfos.readLatestCommit(directory);
+        String recorded = commit.getUserData().get(LAYOUT_COMMIT_KEY);
+        if (recorded == null && commit.totalMaxDoc() == 0) {
+            return requested;
+        }
+        IndexLayout existing = recorded != null ? IndexLayout.valueOf(recorded) : IndexLayout.STANDARD;
+        if (existing != requested) {
+            logger.warn("Index uses layout {}, not the requested {}; rebuild the index to change it", existing, requested);
+        }
+        return existing;
+    }
+    
+    /**
+     * Directories of the index shards: the index directory itself for a single shard,
+     * otherwise shard-0 ... shard-N-1 inside it. An existing index keeps its shard count.
+     */
+    private static File[] resolveShardDirs(File indexDir, int requested) {
+        int existing = 0;
+        while (new File(indexDir, SHARD_DIR_PREFIX + existing).isDirectory()) {
+            existing++;
+        }
+        if (existing == 0) {
+            String[] files = indexDir.list();
+            for (int i = 0; files != null && i < files.length && existing == 0; i++) {
+                if (files[i].startsWith(IndexFileNames.SEGMENTS)) {
+                    existing = 1;
+                }
+            }
+        }
+        int shardCount = existing > 0 ? existing : requested;
+        if (shardCount != requested) {
+            logger.warn("Index has {} shards, not the requested {}; rebuild the index to change it", shardCount, requested);
+        }
+        
+        if (shardCount == 1) {
+            return new File[] {indexDir};
+        }
+        File[] shardDirs = new File[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shardDirs[i] = new File(indexDir, SHARD_DIR_PREFIX + i);
+        }
+        return shardDirs;
+    }
+    
+    private void initializeIndex(File indexDirFile, double maxStaleSeconds, IndexLayout requestedLayout) throws IOException {
         try {
-            String indexDir = "target/index";
-            
-            File indexDirFile = new File(indexDir);
-            if (!indexDirFile.exists()) {
-                indexDirFile.mkdirs();
+            File[] shardDirs = resolveShardDirs(indexDirFile, indexConfig.getShardCount());
+            this.shardWriters = new IndexWriter[shardDirs.length];
+            boolean committed = false;
+            for (int i = 0; i < shardDirs.length; i++) {
+                if (!shardDirs[i].exists()) {
+                    shardDirs[i].mkdirs();
+                }
+                FSDirectory directory = indexConfig.openDirectory(shardDirs[i]);
+                if (i == 0) {
+                    this.layout = resolveLayout(directory, requestedLayout);
+                }
+                committed |= DirectoryReader.indexExists(directory);
+                
+                IndexWriterConfig config = new IndexWriterConfig(analyzer);
+                config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+                config.setCodec(createCodec(layout));
+                // The configured buffer is shared by all shards
+                config.setRAMBufferSizeMB(indexConfig.getRamBufferMB() / shardDirs.length);
+                config.setMergePolicy(indexConfig.createMergePolicy(false));
+                config.setMergeScheduler(indexConfig.createMergeScheduler());
+                
+                shardWriters[i] = new IndexWriter(directory, config);
+                shardWriters[i].setLiveCommitData(Collections.singletonMap(LAYOUT_COMMIT_KEY, layout.name()).entrySet());
+            }
+            this.indexManifest = IndexManifest.load(new File(indexDirFile, MANIFEST_FILE_NAME));
+            if (!committed && indexManifest.size() > 0) {
+                // Entries of an index that was deleted or never committed would skip their files
+                logger.warn("Index has no commit, ignoring the manifest of {} files", indexManifest.size());
+                indexManifest.clear();
+            }
+            // Manifests used to be kept next to the index, where they outlived a deleted index
+            File legacyManifest = new File(indexDirFile.getPath() + ".manifest.json");
+            if (legacyManifest.isFile() && legacyManifest.delete()) {
+                logger.info("Deleted the manifest next to the index, unchanged files are indexed once more: {}", legacyManifest);
             }
             
-            FSDirectory directory = FSDirectory.open(indexDirFile.toPath());
-            Analyzer analyzer = new StandardAnalyzer();
-            IndexWriterConfig config = new IndexWriterConfig(analyzer);
-            config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
-            
-            this.indexWriter = new IndexWriter(directory, config);
-            refreshReader();
+            if (shardWriters.length > 1) {
+                this.shardExecutor = Executors.newFixedThreadPool(shardWriters.length, new NamedThreadFactory("shard-search"));
+            }
+            // NRT readers come from the writers, so they also see chunks that are not committed yet
+            this.searcherManager = new ShardedSearcherManager(shardWriters, searchExecutor, shardExecutor);
+            this.keywordExtractor = new CorpusKeywordExtractor(textAnalyzer, searcherManager, KEYWORD_SOURCE_FIELD, KEYWORDS_PER_CHUNK);
+            this.refresher = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("index-refresher"));
+            long refreshMillis = Math.max(1, (long) (maxStaleSeconds * 1000));
+            refresher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        searcherManager.maybeRefresh();
+                    } catch (IOException e) {
+                        logger.warn("Periodic index refresh failed", e);
+                    }
+                }
+            }, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
             
-            logger.info("Index initialized: {}", indexDir);
+            logger.info("Index initialized: {} ({} layout, {} shards, {})", indexDirFile, layout, shardWriters.length, indexConfig);
         } catch (IOException e) {
             logger.error("Error occurred during index initialization", e);
             throw new RuntimeException("Index initialization failed", e);
         }
     }
     
+    /**
+     * Shard writer of a file; routing by name keeps all chunks of a file, including chunks
+     * indexed before documents were keyed by path, in one shard
+     */
+    private IndexWriter writerFor(String fileName) {
+        return shardWriters[Math.floorMod(fileName.hashCode(), shardWriters.length)];
+    }
+    
+    /**
+     * Makes everything written so far visible to new searches. The reopen is incremental
+     * (openIfChanged on the NRT reader) and searches still holding the old searcher keep
+     * using it until they release it.
+     */
     private void refreshReader() throws IOException {
-        if (indexSearcher != null) {
-            indexSearcher.getIndexReader().close();
+        long start = System.nanoTime();
+        searcherManager.maybeRefreshBlocking();
+        REFRESH_TIME.recordSince(start);
+    }
+    
+    /**
+     * Commits the shard writers and then persists the manifest as it was before the commit
+     * started, so entries of files still being indexed are never recorded ahead of their
+     * chunks. If a shard fails to commit the manifest is not written and the files of the
+     * failed commit are indexed again on the next run. Commits are serialized, so an older
+     * snapshot is never saved over a newer one.
+     */
+    void commitIndex() throws IOException {
+        synchronized (commitLock) {
+            long start = System.nanoTime();
+            // Entries are put after their chunks were written, so the commit covers the snapshot
+            Map<String, ManifestEntry> snapshot = indexManifest.snapshot();
+            for (IndexWriter shardWriter : shardWriters) {
+                shardWriter.commit();
+            }
+            COMMIT_TIME.recordSince(start);
+            indexManifest.save(snapshot);
         }
-        try {
-            indexSearcher = new IndexSearcher(DirectoryReader.open(indexWriter.getDirectory()));
-        } catch (IndexNotFoundException e) {
-            // Index doesn't exist yet, will be created when first document is added
-            logger.info("Index not found, will be created when first document is indexed");
-            indexSearcher = null;
+    }
+    
+    /**
+     * Switches the writer to the bulk profile: a larger indexing buffer, more segments per
+     * merge tier and unthrottled merges. Nested and concurrent directory ingests share it.
+     */
+    private synchronized void beginBulkLoad() {
+        if (!indexConfig.isBulkProfile() || bulkLoads++ > 0) {
+            return;
+        }
+        for (IndexWriter shardWriter : shardWriters) {
+            LiveIndexWriterConfig liveConfig = shardWriter.getConfig();
+            liveConfig.setRAMBufferSizeMB(indexConfig.getBulkRamBufferMB() / shardWriters.length);
+            liveConfig.setMergePolicy(indexConfig.createMergePolicy(true));
+            ((ConcurrentMergeScheduler) liveConfig.getMergeScheduler()).disableAutoIOThrottle();
         }
+        logger.info("Bulk indexing profile enabled (RAM buffer {} MB)", indexConfig.getBulkRamBufferMB());
+    }
+    
+    /**
+     * Restores the regular writer settings after the last bulk ingest and starts the merges
+     * the regular merge policy now asks for
+     */
+    private synchronized void endBulkLoad() throws IOException {
+        if (!indexConfig.isBulkProfile() || --bulkLoads > 0) {
+            return;
+        }
+        for (IndexWriter shardWriter : shardWriters) {
+            LiveIndexWriterConfig liveConfig = shardWriter.getConfig();
+            liveConfig.setRAMBufferSizeMB(indexConfig.getRamBufferMB() / shardWriters.length);
+            liveConfig.setMergePolicy(indexConfig.createMergePolicy(false));
+            ((ConcurrentMergeScheduler) liveConfig.getMergeScheduler()).enableAutoIOThrottle();
+            shardWriter.maybeMerge();
+        }
+        logger.info("Bulk indexing profile reverted");
     }
     
     public void indexPDF(File pdfFile) throws IOException {
         logger.info("Starting PDF indexing: {}", pdfFile.getName());
         
-        // Extract text chunks from PDF
-        List<PDFChunk> chunks = pdfProcessor.processPDF(pdfFile);
+        int chunkCount = updateFile(pdfFile);
+        if (chunkCount == UNCHANGED) {
+            logger.info("PDF unchanged since last indexing, skipped: {}", pdfFile.getName());
+            return;
+        }
         
-        // Delete existing index for this file
-        deleteExistingIndex(pdfFile.getName());
+        commitIndex();
+        refreshReader();
         
-        // Add new chunks to index
-        for (PDFChunk chunk : chunks) {
-            Document doc = createDocument(chunk);
-            indexWriter.addDocument(doc);
+        logger.info("PDF indexing completed: {} ({} chunks)", pdfFile.getName(), chunkCount);
+    }
+    
+    /**
+     * Indexes every PDF below the directory with a bounded pool of extraction/analysis workers
+     * feeding the shared IndexWriter. The index is committed every commitEveryFiles processed
+     * files (0 = only once at the end) and the reader is refreshed a single time when done.
+     * Files whose content hash matches the manifest are skipped.
+     */
+    public IngestReport indexDirectory(File directory, int workerCount, int commitEveryFiles) throws IOException {
+        List<File> pdfFiles = findPDFFiles(directory);
+        logger.info("Starting directory indexing: {} ({} PDF files, {} workers)",
+            directory, pdfFiles.size(), workerCount);
+        
+        long startTime = System.currentTimeMillis();
+        int indexedFiles = 0;
+        int skippedFiles = 0;
+        int failedFiles = 0;
+        long chunkCount = 0;
+        
+        ExecutorService ingestPool = Executors.newFixedThreadPool(Math.max(1, workerCount),
+            new NamedThreadFactory("pdf-ingest"));
+        beginBulkLoad();
+        try {
+            CompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(ingestPool);
+            final Map<Future<Integer>, File> pending = new HashMap<Future<Integer>, File>();
+            for (final File pdfFile : pdfFiles) {
+                Future<Integer> future = completionService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws IOException {
+                        return addPDFChunks(pdfFile);
+                    }
+                });
+                pending.put(future, pdfFile);
+            }
+            
+            // Indexed and failed files since the last commit; unchanged files are not counted
+            int uncommittedFiles = 0;
+            for (int i = 0; i < pdfFiles.size(); i++) {
+                Future<Integer> future = completionService.take();
+                File pdfFile = pending.remove(future);
+                try {
+                    int fileChunks = future.get();
+                    if (fileChunks == UNCHANGED) {
+                        skippedFiles++;
+                        SKIPPED_FILES.increment();
+                        continue;
+                    }
+                    chunkCount += fileChunks;
+                    indexedFiles++;
+                    INDEXED_FILES.increment();
+                } catch (ExecutionException e) {
+                    failedFiles++;
+                    FAILED_FILES.increment();
+                    logger.error("Failed to index {}", pdfFile, e.getCause());
+                }
+                
+                if (commitEveryFiles > 0 && ++uncommittedFiles >= commitEveryFiles) {
+                    commitIndex();
+                    uncommittedFiles = 0;
+                    logger.info("Committed after {}/{} files ({} chunks)", i + 1, pdfFiles.size(), chunkCount);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing " + directory, e);
+        } finally {
+            ingestPool.shutdownNow();
+            endBulkLoad();
         }
         
-        indexWriter.commit();
+        commitIndex();
         refreshReader();
         
-        logger.info("PDF indexing completed: {} ({} chunks)", pdfFile.getName(), chunks.size());
+        IngestReport report = new IngestReport(indexedFiles, skippedFiles, failedFiles, chunkCount,
+            System.currentTimeMillis() - startTime);
+        logger.info("Directory indexing completed: {}", report);
+        logger.info("TTTT word cache: {}", textAnalyzer.getWordCacheStats());
+        logger.info("{}", pdfProcessor.getTextCache());
+        logger.info(Metrics.report());
+        return report;
+    }
+    
+    /**
+     * Brings one file up to date in the IndexWriter without committing or refreshing;
+     * used by indexPDF and IngestQueue
+     *
+     * @return number of chunks written, or UNCHANGED if the file was skipped
+     */
+    int updateFile(File pdfFile) throws IOException {
+        int chunkCount;
+        try {
+            chunkCount = addPDFChunks(pdfFile);
+        } catch (IOException | RuntimeException e) {
+            FAILED_FILES.increment();
+            throw e;
+        }
+        if (chunkCount == UNCHANGED) {
+            SKIPPED_FILES.increment();
+        } else {
+            INDEXED_FILES.increment();
+        }
+        return chunkCount;
+    }
+    
+    private List<File> findPDFFiles(File directory) throws IOException {
+        List<File> pdfFiles = new ArrayList<File>();
+        Stream<Path> paths = Files.walk(directory.toPath());
+        try {
+            Iterator<Path> iterator = paths.iterator();
+            while (iterator.hasNext()) {
+                Path path = iterator.next();
+                if (Files.isRegularFile(path) && path.getFileName().toString().toLowerCase().endsWith(".pdf")) {
+                    pdfFiles.add(path.toFile());
+                }
+            }
+        } finally {
+            paths.close();
+        }
+        Collections.sort(pdfFiles);
+        return pdfFiles;
+    }
+    
+    /**
+     * Brings the chunks of one file in the IndexWriter up to date without committing.
+     * Unchanged files are detected by size/mtime and then by content hash; for a modified
+     * file only the pages whose PageHasher hash changed are deleted and re-extracted.
+     *
+     * The new chunks are streamed into the IndexWriter while they are extracted (see
+     * DocumentStream), so only a bounded number of documents of a file is held in memory. A
+     * whole file is swapped in with a single updateDocuments, so commits and searches see
+     * the old or the new chunks, never a mix, and a file whose extraction fails leaves the
+     * index untouched. A page-level update deletes the changed pages and then adds their
+     * chunks, once the first chunk has been extracted; a refresh in between shows those
+     * pages without chunks until the next refresh, and a commit in between, or an extraction
+     * failing after its first page, is repaired by the next update, as the manifest still
+     * holds the old page hashes. Updates of the same file are serialized, so a second one
+     * finds the manifest entry of the first instead of adding its chunks again.
+     *
+     * @return number of chunks written, or UNCHANGED if the file was skipped
+     */
+    private int addPDFChunks(final File pdfFile) throws IOException {
+        String filePath = PDFProcessor.documentPath(pdfFile);
+        synchronized (pathLocks[Math.floorMod(filePath.hashCode(), pathLocks.length)]) {
+            long size = pdfFile.length();
+            long lastModified = pdfFile.lastModified();
+            
+            ManifestEntry previous = indexManifest.get(filePath);
+            if (previous != null && previous.getSize() == size && previous.getLastModified() == lastModified) {
+                return UNCHANGED;
+            }
+            
+            final String contentHash = Hashing.sha256Hex(pdfFile);
+            if (previous != null && contentHash.equals(previous.getContentHash())) {
+                // Touched but not modified; remember the new mtime so the hash is not recomputed next time
+                indexManifest.put(new ManifestEntry(filePath, size, lastModified, contentHash, previous.getPageHashes()));
+                return UNCHANGED;
+            }
+            
+            IndexWriter shardWriter = writerFor(pdfFile.getName());
+            int chunkCount;
+            List<String> pageHashes;
+            if (previous == null || previous.getPageHashes() == null) {
+                chunkCount = replaceChunks(shardWriter, pdfFile.getName(), filePath, null, new ChunkDocuments() {
+                    @Override
+                    protected void produce() throws IOException {
+                        pdfProcessor.processPDF(pdfFile, contentHash, this);
+                    }
+                });
+                // Served from the text cache filled by the extraction above when it is enabled
+                pageHashes = pdfProcessor.hashPages(pdfFile, contentHash);
+            } else {
+                pageHashes = pdfProcessor.hashPages(pdfFile, contentHash);
+                List<String> previousHashes = previous.getPageHashes();
+                final TreeSet<Integer> changedPages = new TreeSet<Integer>();
+                for (int i = 0; i < Math.max(pageHashes.size(), previousHashes.size()); i++) {
+                    if (i >= pageHashes.size() || i >= previousHashes.size()
+                            || !pageHashes.get(i).equals(previousHashes.get(i))) {
+                        changedPages.add(i + 1);
+                    }
+                }
+                logger.info("{} of {} pages changed in {}", changedPages.size(), pageHashes.size(), pdfFile.getName());
+                
+                chunkCount = replaceChunks(shardWriter, pdfFile.getName(), filePath, changedPages, new ChunkDocuments() {
+                    @Override
+                    protected void produce() throws IOException {
+                        pdfProcessor.processPages(pdfFile, changedPages, this);
+                    }
+                });
+            }
+            
+            indexManifest.put(new ManifestEntry(filePath, size, lastModified, contentHash, pageHashes));
+            return chunkCount;
+        }
+    }
+    
+    /**
+     * Replaces the chunks of the given pages of the file, or of the whole file if pageNumbers
+     * is null, with the new chunks. Includes the extraction and the index-time analysis of
+     * all fields of the new chunks.
+     *
+     * @return number of chunks written
+     */
+    private int replaceChunks(IndexWriter shardWriter, String fileName, String filePath,
+                              Collection<Integer> pageNumbers, DocumentStream documents) throws IOException {
+        long start = System.nanoTime();
+        int chunkCount;
+        try {
+            if (pageNumbers == null) {
+                // Deletes the old chunks and adds the new ones atomically
+                shardWriter.updateDocuments(new Term("filePath", filePath), documents);
+                deleteLegacyChunks(shardWriter, fileName);
+            } else if (documents.iterator().hasNext()) {
+                // Waits for the first chunk, so a file that cannot be opened fails before its pages are deleted
+                deletePages(shardWriter, filePath, pageNumbers);
+                shardWriter.addDocuments(documents);
+            } else {
+                deletePages(shardWriter, filePath, pageNumbers);
+            }
+        } finally {
+            // Replaces the unchecked exception the iterator threw into the writer with the
+            // extraction failure, and stops the extraction if the writer failed by itself
+            chunkCount = documents.finish();
+        }
+        APPLY_FILE_TIME.recordSince(start);
+        return chunkCount;
+    }
+    
+    /**
+     * Documents of the chunks passed to accept(), with their keywords
+     */
+    private abstract class ChunkDocuments extends DocumentStream implements ChunkSink {
+        ChunkDocuments() {
+            super(chunkProducers);
+        }
+        
+        @Override
+        public void accept(PDFChunk chunk) throws IOException {
+            long keywordStart = System.nanoTime();
+            Map<String, Float> keywords = keywordExtractor.extract(chunk.getContent());
+            KEYWORD_EXTRACT_TIME.recordSince(keywordStart);
+            put(createDocument(chunk, layout, keywords));
+        }
     }
     
-    private void deleteExistingIndex(String fileName) throws IOException {
-        Term term = new Term("fileName", fileName);
-        indexWriter.deleteDocuments(term);
-        indexWriter.commit();
+    /**
+     * Deletes the chunks indexed under the file name before documents were keyed by path
+     * (those have no filePath field, so the new chunks are never matched)
+     */
+    private void deleteLegacyChunks(IndexWriter shardWriter, String fileName) throws IOException {
+        BooleanQuery.Builder legacyChunks = new BooleanQuery.Builder();
+        legacyChunks.add(new TermQuery(new Term("fileName", fileName)), BooleanClause.Occur.MUST);
+        legacyChunks.add(new TermRangeQuery("filePath", null, null, true, true), BooleanClause.Occur.MUST_NOT);
+        shardWriter.deleteDocuments(legacyChunks.build());
     }
     
-    private Document createDocument(PDFChunk chunk) {
+    private void deletePages(IndexWriter shardWriter, String filePath, Collection<Integer> pageNumbers) throws IOException {
+        if (pageNumbers.isEmpty()) {
+            return;
+        }
+        Query pageQuery;
+        if (layout.isNumericFields()) {
+            int[] pages = new int[pageNumbers.size()];
+            int i = 0;
+            for (Integer pageNumber : pageNumbers) {
+                pages[i++] = pageNumber;
+            }
+            pageQuery = IntPoint.newSetQuery("pageNumber", pages);
+        } else {
+            List<BytesRef> pageTerms = new ArrayList<BytesRef>();
+            for (Integer pageNumber : pageNumbers) {
+                pageTerms.add(new BytesRef(String.valueOf(pageNumber)));
+            }
+            pageQuery = new TermInSetQuery("pageNumber", pageTerms);
+        }
+        
+        BooleanQuery.Builder pages = new BooleanQuery.Builder();
+        pages.add(new TermQuery(new Term("filePath", filePath)), BooleanClause.Occur.FILTER);
+        pages.add(pageQuery, BooleanClause.Occur.FILTER);
+        shardWriter.deleteDocuments(pages.build());
+    }
+    
+    static Document createDocument(PDFChunk chunk, IndexLayout layout) {
+        return createDocument(chunk, layout, Collections.<String, Float>emptyMap());
+    }
+    
+    /**
+     * @param keywords keyword weights of the chunk, indexed as features of the keywords field
+     */
+    static Document createDocument(PDFChunk chunk, IndexLayout layout, Map<String, Float> keywords) {
         Document doc = new Document();
         
         // Full text (for search)
-        doc.add(new TextField("content", chunk.getContent(), Field.Store.YES));
+        if (layout.isDeduplicatedContent() && chunk.getOverlapLength() > 0) {
+            // Indexed in full, stored without the prefix the previous chunk already stores
+            doc.add(new Field("content", chunk.getContent(), CONTENT_OFFSETS_UNSTORED_FIELD_TYPE));
+            doc.add(new StoredField("content", chunk.getContent().substring(chunk.getOverlapLength())));
+            doc.add(new StoredField("overlapLength", chunk.getOverlapLength()));
+        } else if (layout.isContentOffsets()) {
+            doc.add(new Field("content", chunk.getContent(), CONTENT_OFFSETS_FIELD_TYPE));
+        } else {
+            doc.add(new TextField("content", chunk.getContent(), Field.Store.YES));
+        }
         
-        // TTTT processed text using OpenNLP
-        String processedContent = textAnalyzer.analyzeText(chunk.getContent());
-        doc.add(new TextField("processedContent", processedContent, Field.Store.NO));
+        // TTTT processed text, analyzed by TTTTAnalyzer while indexing
+        doc.add(new TextField("processedContent", chunk.getContent(), Field.Store.NO));
+        
+        // Edge n-grams of both token streams for prefix matching
+        doc.add(new Field("contentPrefix", chunk.getContent(), PREFIX_FIELD_TYPE));
+        doc.add(new Field("processedContentPrefix", chunk.getContent(), PREFIX_FIELD_TYPE));
+        
+        for (Map.Entry<String, Float> keyword : keywords.entrySet()) {
+            doc.add(new FeatureField(KEYWORD_FIELD, keyword.getKey(), keyword.getValue()));
+        }
         
         // Metadata
         doc.add(new StringField("fileName", chunk.getFileName(), Field.Store.YES));
-        doc.add(new StringField("pageNumber", String.valueOf(chunk.getPageNumber()), Field.Store.YES));
-        doc.add(new StringField("chunkIndex", String.valueOf(chunk.getChunkIndex()), Field.Store.YES));
+        doc.add(new StringField("filePath", chunk.getFilePath(), Field.Store.YES));
+        if (layout.isNumericFields()) {
+            addIntField(doc, "pageNumber", chunk.getPageNumber());
+            addIntField(doc, "chunkIndex", chunk.getChunkIndex());
+        } else {
+            doc.add(new StringField("pageNumber", String.valueOf(chunk.getPageNumber()), Field.Store.YES));
+            doc.add(new StringField("chunkIndex", String.valueOf(chunk.getChunkIndex()), Field.Store.YES));
+        }
         
         return doc;
     }
     
-    public List<SearchResult> search(String query, int maxResults) throws IOException {
-        logger.info("Performing search: '{}' (max {} results)", query, maxResults);
+    /**
+     * Point for exact and set queries, doc values for sorting and a compact stored value
+     */
+    private static void addIntField(Document doc, String name, int value) {
+        doc.add(new IntPoint(name, value));
+        doc.add(new NumericDocValuesField(name, value));
+        doc.add(new StoredField(name, value));
+    }
+    
+    private static int intValue(Document doc, String name) {
+        IndexableField field = doc.getField(name);
+        if (field == null) {
+            return 0;
+        }
+        Number number = field.numericValue();
+        return number != null ? number.intValue() : Integer.parseInt(field.stringValue());
+    }
+    
+    /**
+     * Display text of a deduplicated chunk: the repeated prefix is taken from the stored
+     * text of the preceding chunks of the same page
+     */
+    private String displayContent(IndexSearcher indexSearcher, Document doc) throws IOException {
+        String content = doc.get("content");
+        int missing = intValue(doc, "overlapLength");
+        if (missing == 0) {
+            return content;
+        }
         
-        if (indexSearcher == null) {
-            logger.warn("No index available for search. Please index some PDF files first.");
-            return new ArrayList<SearchResult>();
+        String filePath = doc.get("filePath");
+        int pageNumber = intValue(doc, "pageNumber");
+        int chunkIndex = intValue(doc, "chunkIndex");
+        StringBuilder prefix = new StringBuilder();
+        while (missing > 0 && chunkIndex > 0) {
+            chunkIndex--;
+            TopDocs previous = indexSearcher.search(chunkQuery(filePath, pageNumber, chunkIndex), 1);
+            if (previous.scoreDocs.length == 0) {
+                break;
+            }
+            
+            String previousContent = indexSearcher.doc(previous.scoreDocs[0].doc, RESULT_FIELDS).get("content");
+            int take = Math.min(missing, previousContent.length());
+            prefix.insert(0, previousContent.substring(previousContent.length() - take));
+            missing -= take;
         }
+        return prefix.append(content).toString();
+    }
+    
+    public List<SearchResult> search(String query, int maxResults) throws IOException {
+        logger.info("Performing search: '{}' (max {} results)", query, maxResults);
         
+        ShardedSearcher indexSearcher = searcherManager.acquire();
         try {
-            // Process query with TTTT NLP
-            String processedQuery = textAnalyzer.analyzeText(query);
-            List<String> keywords = textAnalyzer.extractKeywords(query);
-            
-            // Create multi-field query
-            String[] fields = {"content", "processedContent"};
-            float[] boosts = {2.0f, 1.5f};
-            
-            MultiFieldQueryParser parser = new MultiFieldQueryParser(fields, new StandardAnalyzer());
-            
-            // Build combined query
-            StringBuilder queryString = new StringBuilder();
-            queryString.append("(").append(QueryParser.escape(query)).append(")");
-            
-            // Add processed query
-            if (!processedQuery.trim().isEmpty()) {
-                queryString.append(" OR (").append(QueryParser.escape(processedQuery)).append(")");
+            if (indexSearcher.getIndexReader().numDocs() == 0) {
+                logger.warn("No index available for search. Please index some PDF files first.");
+                return new ArrayList<SearchResult>();
             }
+            QUERIES.increment();
             
-            // Add keywords
-            for (String keyword : keywords) {
-                if (keyword.length() >= 2) {
-                    queryString.append(" OR (").append(QueryParser.escape(keyword)).append(")");
-                    // Add wildcard for compound words (avoid starting with *)
-                    queryString.append(" OR (").append(QueryParser.escape(keyword)).append("*)");
+            // Any refresh that changed the index yields a new reader version
+            long readerVersion = indexSearcher.getVersion();
+            long cacheVersion;
+            while (readerVersion > (cacheVersion = resultCacheVersion.get())) {
+                // Entries of older versions can never hit again, drop them instead of waiting for eviction.
+                // Searches still on an older searcher leave the cache alone.
+                if (resultCacheVersion.compareAndSet(cacheVersion, readerVersion)) {
+                    resultCache.clear();
+                    break;
                 }
             }
+            ResultCacheKey cacheKey = new ResultCacheKey(normalizeQuery(query), maxResults, readerVersion);
+            List<SearchResult> cached = resultCache.get(cacheKey);
+            if (cached != null) {
+                RESULT_CACHE_HITS.increment();
+                logger.info("Search served from result cache: {} results", cached.size());
+                return copyResults(cached);
+            }
             
-            Query luceneQuery = parser.parse(queryString.toString());
+            Query luceneQuery = buildQuery(query);
             
             // Execute search
+            long searchStart = System.nanoTime();
             TopDocs topDocs = indexSearcher.search(luceneQuery, maxResults);
             
             List<SearchResult> results = new ArrayList<SearchResult>();
             for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
-                Document doc = indexSearcher.doc(scoreDoc.doc);
+                Document doc = indexSearcher.doc(scoreDoc.doc, RESULT_FIELDS);
                 
                 SearchResult result = new SearchResult(
-                    doc.get("content"),
-                    Integer.parseInt(doc.get("pageNumber")),
+                    displayContent(indexSearcher, doc),
+                    intValue(doc, "pageNumber"),
                     scoreDoc.score,
                     doc.get("fileName")
                 );
                 
                 results.add(result);
             }
+            SEARCH_TIME.recordSince(searchStart);
             
+            resultCache.put(cacheKey, Collections.unmodifiableList(copyResults(results)));
             logger.info("Search completed: {} results found", results.size());
             return results;
             
-        } catch (ParseException e) {
-            logger.error("Query parsing error", e);
-            throw new IOException("Failed to parse search query", e);
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+    }
+    
+    private Query buildQuery(String query) throws IOException {
+        // Process query with TTTT NLP
+        long buildStart = System.nanoTime();
+        String processedQuery = textAnalyzer.analyzeText(query);
+        List<String> keywords = textAnalyzer.extractKeywords(query);
+        
+        // Build the multi-field query from the analyzed parts
+        Query luceneQuery = queryBuilder.build(query, processedQuery, keywords);
+        QUERY_BUILD_TIME.recordSince(buildStart);
+        return luceneQuery;
+    }
+    
+    /**
+     * Paged search returning hits without their text; use loadContent or highlight for the
+     * hits that are actually displayed
+     *
+     * @param offset   number of leading hits to skip
+     * @param pageSize maximum number of hits in the page
+     */
+    public SearchPage searchHits(String query, int offset, int pageSize) throws IOException {
+        logger.info("Performing paged search: '{}' (hits {}-{})", query, offset, offset + pageSize);
+        
+        ShardedSearcher indexSearcher = searcherManager.acquire();
+        try {
+            return searchPage(indexSearcher, query, offset, pageSize);
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+    }
+    
+    /**
+     * Runs several queries against one searcher snapshot, so all pages reflect the same
+     * state of the index. The queries are searched in parallel on the executor; the calling
+     * thread searches the first one itself.
+     *
+     * @return the first page of hits of each query, in the order of the queries
+     */
+    public List<SearchPage> searchAll(List<String> queries, final int pageSize, ExecutorService executor) throws IOException {
+        logger.info("Performing batch search: {} queries ({} hits each)", queries.size(), pageSize);
+        
+        final ShardedSearcher indexSearcher = searcherManager.acquire();
+        @SuppressWarnings("unchecked")
+        Future<SearchPage>[] pending = (Future<SearchPage>[]) new Future<?>[queries.size()];
+        try {
+            for (int i = 1; i < queries.size(); i++) {
+                final String query = queries.get(i);
+                pending[i] = executor.submit(new Callable<SearchPage>() {
+                    @Override
+                    public SearchPage call() throws IOException {
+                        return searchPage(indexSearcher, query, 0, pageSize);
+                    }
+                });
+            }
+            List<SearchPage> pages = new ArrayList<SearchPage>(queries.size());
+            for (int i = 0; i < queries.size(); i++) {
+                pages.add(pending[i] != null ? pending[i].get() : searchPage(indexSearcher, queries.get(i), 0, pageSize));
+            }
+            return pages;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while searching a batch of queries");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException("Batch search failed", e.getCause());
+        } finally {
+            // Queries that already started still use the searcher, so they are waited for
+            for (Future<SearchPage> future : pending) {
+                if (future != null && !future.cancel(false)) {
+                    ShardedSearcher.awaitQuietly(future);
+                }
+            }
+            searcherManager.release(indexSearcher);
+        }
+    }
+    
+    private SearchPage searchPage(ShardedSearcher indexSearcher, String query, int offset, int pageSize) throws IOException {
+        List<SearchHit> hits = new ArrayList<SearchHit>();
+        if (indexSearcher.getIndexReader().numDocs() == 0 || pageSize <= 0) {
+            return new SearchPage(query, offset, 0, hits);
+        }
+        QUERIES.increment();
+        long readerVersion = indexSearcher.getVersion();
+        Query luceneQuery = buildQuery(query);
+        
+        long searchStart = System.nanoTime();
+        TopDocs topDocs = indexSearcher.search(luceneQuery, offset + pageSize);
+        for (int i = offset; i < topDocs.scoreDocs.length; i++) {
+            hits.add(createHit(indexSearcher, topDocs.scoreDocs[i], readerVersion));
+        }
+        SEARCH_TIME.recordSince(searchStart);
+        
+        return new SearchPage(query, offset, topDocs.totalHits.value, hits);
+    }
+    
+    /**
+     * Cursor-based paging: each page collects only pageSize hits after the cursor, however
+     * deep it is. Pass null for the first page and the page's getNextCursor() for the pages
+     * after it. The pages of one cursor chain are searched on the snapshot of the first page.
+     * If that snapshot has expired, the cursor's doc id means nothing on the current index, so
+     * the page is taken from the cursor's position with offset paging instead; hits may repeat
+     * or be skipped where the index changed.
+     */
+    public SearchPage searchAfter(String query, SearchCursor after, int pageSize) throws IOException {
+        int position = after != null ? after.getPosition() : 0;
+        logger.info("Performing cursor search: '{}' (hits {}-{})", query, position, position + pageSize);
+        
+        cursorSearchers.prune(CURSOR_MAX_AGE_SECONDS);
+        ShardedSearcher indexSearcher = after != null ? cursorSearchers.acquire(after.getReaderVersion()) : null;
+        boolean pinned = indexSearcher != null;
+        if (!pinned) {
+            if (after != null) {
+                logger.warn("Search cursor snapshot expired, continuing on the current index from hit {}", position);
+            }
+            indexSearcher = searcherManager.acquire();
+        }
+        try {
+            List<SearchHit> hits = new ArrayList<SearchHit>();
+            if (indexSearcher.getIndexReader().numDocs() == 0 || pageSize <= 0) {
+                return new SearchPage(query, position, 0, hits);
+            }
+            QUERIES.increment();
+            // Keeps this snapshot available to the following pages; returns the reader version
+            long readerVersion = cursorSearchers.record(indexSearcher);
+            Query luceneQuery = buildQuery(query);
+            
+            TopDocs topDocs;
+            int skip = 0;
+            if (after != null && !pinned) {
+                topDocs = searchBatch(indexSearcher, luceneQuery, null, position + pageSize);
+                skip = position;
+            } else {
+                ScoreDoc afterDoc = after != null ? new ScoreDoc(after.getDocId(), after.getScore()) : null;
+                topDocs = searchBatch(indexSearcher, luceneQuery, afterDoc, pageSize);
+            }
+            for (int i = skip; i < topDocs.scoreDocs.length; i++) {
+                hits.add(createHit(indexSearcher, topDocs.scoreDocs[i], readerVersion));
+            }
+            
+            // The total counts all matches, also those before the cursor, but may be a lower bound
+            int nextPosition = position + hits.size();
+            boolean lastPage = hits.size() < pageSize
+                || (topDocs.totalHits.relation == TotalHits.Relation.EQUAL_TO && nextPosition >= topDocs.totalHits.value);
+            SearchCursor nextCursor = null;
+            if (!lastPage) {
+                ScoreDoc last = topDocs.scoreDocs[topDocs.scoreDocs.length - 1];
+                nextCursor = new SearchCursor(readerVersion, last.doc, last.score, nextPosition);
+            }
+            return new SearchPage(query, position, topDocs.totalHits.value, hits, nextCursor);
+        } finally {
+            if (pinned) {
+                cursorSearchers.release(indexSearcher);
+            } else {
+                searcherManager.release(indexSearcher);
+            }
+        }
+    }
+    
+    /**
+     * Streams all hits of the query in score order, batchSize at a time, on the snapshot
+     * that is current now. The caller must close the stream if it stops before the end.
+     */
+    public HitIterator streamHits(String query, int batchSize) throws IOException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        logger.info("Streaming search: '{}' (batches of {})", query, batchSize);
+        
+        ShardedSearcher indexSearcher = searcherManager.acquire();
+        try {
+            QUERIES.increment();
+            long readerVersion = indexSearcher.getVersion();
+            return new HitIterator(this, searcherManager, indexSearcher, readerVersion, buildQuery(query), batchSize);
+        } catch (IOException | RuntimeException e) {
+            searcherManager.release(indexSearcher);
+            throw e;
+        }
+    }
+    
+    TopDocs searchBatch(IndexSearcher indexSearcher, Query luceneQuery, ScoreDoc after, int batchSize) throws IOException {
+        long searchStart = System.nanoTime();
+        TopDocs topDocs = indexSearcher.searchAfter(after, luceneQuery, batchSize);
+        SEARCH_TIME.recordSince(searchStart);
+        return topDocs;
+    }
+    
+    SearchHit createHit(IndexSearcher indexSearcher, ScoreDoc scoreDoc, long readerVersion) throws IOException {
+        Document doc = indexSearcher.doc(scoreDoc.doc, HIT_FIELDS);
+        return new SearchHit(scoreDoc.doc, readerVersion, scoreDoc.score, doc.get("fileName"),
+            doc.get("filePath"), intValue(doc, "pageNumber"), intValue(doc, "chunkIndex"));
+    }
+    
+    /**
+     * Full display text of a hit, or null if its chunk is no longer in the index
+     */
+    public String loadContent(SearchHit hit) throws IOException {
+        ShardedSearcher indexSearcher = searcherManager.acquire();
+        try {
+            int docId = resolveDocId(indexSearcher, hit);
+            if (docId < 0) {
+                return null;
+            }
+            return displayContent(indexSearcher, indexSearcher.doc(docId, RESULT_FIELDS));
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+    }
+    
+    /**
+     * Fragments of the hit's text that match the query, matches wrapped in &lt;em&gt; tags.
+     * Empty if the chunk is no longer in the index or only matched through other fields.
+     */
+    public List<String> highlight(SearchHit hit, String query, int maxFragments) throws IOException {
+        ShardedSearcher indexSearcher = searcherManager.acquire();
+        try {
+            int docId = resolveDocId(indexSearcher, hit);
+            if (docId < 0) {
+                return Collections.emptyList();
+            }
+            String content = displayContent(indexSearcher, indexSearcher.doc(docId, RESULT_FIELDS));
+            return highlighter.highlight(indexSearcher.getIndexReader(), docId, content, buildQuery(query), maxFragments);
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+    }
+    
+    /**
+     * Builds the semantic index from the chunks that are searchable now: fits the embedding
+     * on a random sample of them, embeds every chunk into an HNSW graph and saves it next to
+     * the index. This is an offline step that takes minutes for millions of chunks; hybrid
+     * searches keep using the previous semantic index until the new one is complete, and
+     * ingest is not held up. Concurrent builds run one after the other.
+     *
+     * @return number of chunks in the new semantic index
+     */
+    public int buildVectorIndex() throws IOException {
+        synchronized (vectorBuildLock) {
+            long buildStart = System.nanoTime();
+            ShardedSearcher indexSearcher = searcherManager.acquire();
+            try {
+                IndexReader reader = indexSearcher.getIndexReader();
+                logger.info("Building semantic index over {} chunks", reader.numDocs());
+                
+                // Reservoir sample of the live chunks, so the fit sees all parts of the corpus
+                int[] sampleDocs = new int[Math.min(indexConfig.getVectorSampleSize(), reader.numDocs())];
+                Random random = new Random(VECTOR_SAMPLE_SEED);
+                int seen = 0;
+                for (LeafReaderContext leaf : reader.leaves()) {
+                    Bits liveDocs = leaf.reader().getLiveDocs();
+                    for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+                        if (liveDocs != null && !liveDocs.get(doc)) {
+                            continue;
+                        }
+                        int slot = seen < sampleDocs.length ? seen : random.nextInt(seen + 1);
+                        if (slot < sampleDocs.length) {
+                            sampleDocs[slot] = leaf.docBase + doc;
+                        }
+                        seen++;
+                    }
+                }
+                List<String> sample = new ArrayList<String>(sampleDocs.length);
+                for (int docId : sampleDocs) {
+                    sample.add(displayContent(indexSearcher, indexSearcher.doc(docId, RESULT_FIELDS)));
+                }
+                HashingEmbedder embedder = HashingEmbedder.fit(analyzer, VECTOR_FIELD, sample, indexConfig.getVectorDimension());
+                logger.info("Fitted {}-dimensional embedding on {} chunks", indexConfig.getVectorDimension(), sample.size());
+                
+                final VectorIndex.Builder builder = new VectorIndex.Builder(
+                    embedder, indexConfig.getVectorMaxConnections(), indexConfig.getVectorBeamWidth());
+                forEachIndexedChunk(indexSearcher, new ChunkSink() {
+                    @Override
+                    public void accept(PDFChunk chunk) throws IOException {
+                        builder.add(chunk.getFilePath(), chunk.getPageNumber(), chunk.getChunkIndex(), chunk.getContent());
+                    }
+                });
+                VectorIndex built = builder.build();
+                built.save(vectorIndexFile);
+                this.vectorIndex = built;
+                
+                VECTOR_BUILD_TIME.recordSince(buildStart);
+                logger.info("Semantic index built: {} chunks in {}s, saved to {}", built.size(),
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - buildStart), vectorIndexFile);
+                return built.size();
+            } finally {
+                searcherManager.release(indexSearcher);
+            }
+        }
+    }
+    
+    /**
+     * Passes every live chunk of the searcher, with its full display text, to the sink
+     */
+    private void forEachIndexedChunk(ShardedSearcher indexSearcher, ChunkSink sink) throws IOException {
+        for (LeafReaderContext leaf : indexSearcher.getIndexReader().leaves()) {
+            Bits liveDocs = leaf.reader().getLiveDocs();
+            for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+                if (liveDocs != null && !liveDocs.get(doc)) {
+                    continue;
+                }
+                Document document = indexSearcher.doc(leaf.docBase + doc, RESULT_FIELDS);
+                sink.accept(new PDFChunk(displayContent(indexSearcher, document), intValue(document, "pageNumber"),
+                    document.get("fileName"), document.get("filePath"), intValue(document, "chunkIndex")));
+            }
+        }
+    }
+    
+    /**
+     * Lexical and semantic search combined. BM25 scores, divided by the best one, and the
+     * cosine similarities of the chunk embeddings to the query are fused as
+     * (1 - vectorWeight) * lexical + vectorWeight * semantic; a chunk found by only one of
+     * the two gets 0 for the other. The scores of the hits are the fused scores.
+     * Without a semantic index (see buildVectorIndex) this is a lexical search.
+     *
+     * @param vectorWeight weight of the semantic similarity, from 0 to 1
+     */
+    public List<SearchHit> searchHybrid(String query, int maxResults, double vectorWeight) throws IOException {
+        if (vectorWeight < 0 || vectorWeight > 1) {
+            throw new IllegalArgumentException("vectorWeight must be between 0 and 1: " + vectorWeight);
+        }
+        logger.info("Performing hybrid search: '{}' (max {} results, vector weight {})", query, maxResults, vectorWeight);
+        
+        ShardedSearcher indexSearcher = searcherManager.acquire();
+        try {
+            List<SearchHit> hits = new ArrayList<SearchHit>();
+            if (indexSearcher.getIndexReader().numDocs() == 0 || maxResults <= 0) {
+                return hits;
+            }
+            QUERIES.increment();
+            long readerVersion = indexSearcher.getVersion();
+            int candidates = Math.max(maxResults, HYBRID_CANDIDATES);
+            // Document id -> {normalized lexical score, semantic similarity}
+            Map<Integer, double[]> scores = new HashMap<Integer, double[]>();
+            
+            long searchStart = System.nanoTime();
+            TopDocs lexical = indexSearcher.search(buildQuery(query), candidates);
+            for (ScoreDoc scoreDoc : lexical.scoreDocs) {
+                scores.put(scoreDoc.doc, new double[] {scoreDoc.score / lexical.scoreDocs[0].score, 0});
+            }
+            SEARCH_TIME.recordSince(searchStart);
+            
+            VectorIndex vectors = vectorIndex;
+            if (vectors != null && vectorWeight > 0) {
+                long vectorStart = System.nanoTime();
+                List<VectorIndex.Match> matches = vectors.search(query, candidates, indexConfig.getVectorEfSearch());
+                int[] docIds = resolveChunks(indexSearcher, matches);
+                for (int i = 0; i < matches.size(); i++) {
+                    // Chunks deleted since the semantic index was built are dropped
+                    if (docIds[i] < 0 || matches.get(i).getSimilarity() <= 0) {
+                        continue;
+                    }
+                    double[] docScores = scores.get(docIds[i]);
+                    if (docScores == null) {
+                        docScores = new double[2];
+                        scores.put(docIds[i], docScores);
+                    }
+                    docScores[1] = matches.get(i).getSimilarity();
+                }
+                VECTOR_SEARCH_TIME.recordSince(vectorStart);
+            }
+            
+            List<ScoreDoc> fused = new ArrayList<ScoreDoc>(scores.size());
+            for (Map.Entry<Integer, double[]> entry : scores.entrySet()) {
+                double[] docScores = entry.getValue();
+                fused.add(new ScoreDoc(entry.getKey(), (float) ((1 - vectorWeight) * docScores[0] + vectorWeight * docScores[1])));
+            }
+            Collections.sort(fused, new Comparator<ScoreDoc>() {
+                @Override
+                public int compare(ScoreDoc a, ScoreDoc b) {
+                    return a.score != b.score ? Float.compare(b.score, a.score) : Integer.compare(a.doc, b.doc);
+                }
+            });
+            for (ScoreDoc scoreDoc : fused.subList(0, Math.min(maxResults, fused.size()))) {
+                hits.add(createHit(indexSearcher, scoreDoc, readerVersion));
+            }
+            return hits;
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+    }
+    
+    /**
+     * Document ids of the matched chunks in this searcher, -1 where a chunk is no longer
+     * indexed. With numeric fields the chunks of a file are found in one pass over the
+     * postings of its path, checking the page and chunk doc values, instead of a query
+     * per chunk.
+     */
+    private int[] resolveChunks(ShardedSearcher indexSearcher, List<VectorIndex.Match> matches) throws IOException {
+        int[] docIds = new int[matches.size()];
+        Arrays.fill(docIds, -1);
+        if (!layout.isNumericFields()) {
+            for (int i = 0; i < matches.size(); i++) {
+                VectorIndex.Match match = matches.get(i);
+                TopDocs chunk = indexSearcher.search(chunkQuery(match.getFilePath(), match.getPageNumber(), match.getChunkIndex()), 1);
+                if (chunk.scoreDocs.length > 0) {
+                    docIds[i] = chunk.scoreDocs[0].doc;
+                }
+            }
+            return docIds;
+        }
+        
+        // File path -> page and chunk index -> position in matches
+        Map<String, Map<Long, Integer>> matchesByFile = new HashMap<String, Map<Long, Integer>>();
+        for (int i = 0; i < matches.size(); i++) {
+            VectorIndex.Match match = matches.get(i);
+            Map<Long, Integer> fileMatches = matchesByFile.get(match.getFilePath());
+            if (fileMatches == null) {
+                fileMatches = new HashMap<Long, Integer>();
+                matchesByFile.put(match.getFilePath(), fileMatches);
+            }
+            fileMatches.put(chunkKey(match.getPageNumber(), match.getChunkIndex()), i);
+        }
+        for (LeafReaderContext leaf : indexSearcher.getIndexReader().leaves()) {
+            Terms paths = leaf.reader().terms("filePath");
+            if (paths == null) {
+                continue;
+            }
+            TermsEnum pathsEnum = paths.iterator();
+            Bits liveDocs = leaf.reader().getLiveDocs();
+            PostingsEnum postings = null;
+            for (Map.Entry<String, Map<Long, Integer>> file : matchesByFile.entrySet()) {
+                if (!pathsEnum.seekExact(new BytesRef(file.getKey()))) {
+                    continue;
+                }
+                postings = pathsEnum.postings(postings, PostingsEnum.NONE);
+                // Doc values only advance, so each file starts over with new iterators
+                NumericDocValues pageNumbers = DocValues.getNumeric(leaf.reader(), "pageNumber");
+                NumericDocValues chunkIndexes = DocValues.getNumeric(leaf.reader(), "chunkIndex");
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    if ((liveDocs != null && !liveDocs.get(doc)) || !pageNumbers.advanceExact(doc) || !chunkIndexes.advanceExact(doc)) {
+                        continue;
+                    }
+                    Integer position = file.getValue().get(chunkKey((int) pageNumbers.longValue(), (int) chunkIndexes.longValue()));
+                    if (position != null) {
+                        docIds[position] = leaf.docBase + doc;
+                    }
+                }
+            }
+        }
+        return docIds;
+    }
+    
+    private static long chunkKey(int pageNumber, int chunkIndex) {
+        return ((long) pageNumber << 32) | (chunkIndex & 0xFFFFFFFFL);
+    }
+    
+    public boolean hasVectorIndex() {
+        return vectorIndex != null;
+    }
+    
+    /**
+     * Document id of the hit's chunk in this searcher: the hit's own id while the reader
+     * is unchanged, otherwise looked up by file path, page and chunk index
+     */
+    private int resolveDocId(ShardedSearcher indexSearcher, SearchHit hit) throws IOException {
+        if (indexSearcher.getVersion() == hit.getReaderVersion()) {
+            return hit.getDocId();
+        }
+        TopDocs chunk = indexSearcher.search(chunkQuery(hit.getFilePath(), hit.getPageNumber(), hit.getChunkIndex()), 1);
+        return chunk.scoreDocs.length > 0 ? chunk.scoreDocs[0].doc : -1;
+    }
+    
+    private Query chunkQuery(String filePath, int pageNumber, int chunkIndex) {
+        BooleanQuery.Builder chunk = new BooleanQuery.Builder();
+        chunk.add(new TermQuery(new Term("filePath", filePath)), BooleanClause.Occur.FILTER);
+        if (layout.isNumericFields()) {
+            chunk.add(IntPoint.newExactQuery("pageNumber", pageNumber), BooleanClause.Occur.FILTER);
+            chunk.add(IntPoint.newExactQuery("chunkIndex", chunkIndex), BooleanClause.Occur.FILTER);
+        } else {
+            chunk.add(new TermQuery(new Term("pageNumber", String.valueOf(pageNumber))), BooleanClause.Occur.FILTER);
+            chunk.add(new TermQuery(new Term("chunkIndex", String.valueOf(chunkIndex))), BooleanClause.Occur.FILTER);
+        }
+        return chunk.build();
+    }
+    
+    /**
+     * SearchResult is mutable, so the cache keeps its own copies and hands out fresh ones
+     */
+    private static List<SearchResult> copyResults(List<SearchResult> results) {
+        List<SearchResult> copies = new ArrayList<SearchResult>(results.size());
+        for (SearchResult result : results) {
+            copies.add(new SearchResult(result.getContent(), result.getPageNumber(), result.getScore(), result.getFileName()));
+        }
+        return copies;
+    }
+    
+    private static Object[] newLocks(int count) {
+        Object[] locks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
         }
+        return locks;
+    }
+    
+    /**
+     * Whitespace does not affect analysis, so queries differing only in spacing share an entry
+     */
+    private static String normalizeQuery(String query) {
+        StringBuilder normalized = new StringBuilder(query.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    normalized.append(' ');
+                    pendingSpace = false;
+                }
+                normalized.append(c);
+            }
+        }
+        return normalized.toString();
+    }
+    
+    public IndexConfig getIndexConfig() {
+        return indexConfig;
+    }
+    
+    public IndexLayout getLayout() {
+        return layout;
+    }
+    
+    public CacheStats getResultCacheStats() {
+        return resultCache.stats();
     }
     
     public int getIndexedDocumentCount() throws IOException {
-        if (indexSearcher == null) {
-            return 0;
+        ShardedSearcher indexSearcher = searcherManager.acquire();
+        try {
+            return indexSearcher.getIndexReader().numDocs();
+        } finally {
+            searcherManager.release(indexSearcher);
         }
-        return indexSearcher.getIndexReader().numDocs();
     }
     
     public void close() throws IOException {
-        if (indexWriter != null) {
-            indexWriter.close();
+        pdfProcessor.close();
+        if (refresher != null) {
+            // Not shutdownNow: interrupting a refresh closes NIOFSDirectory channels under the writer
+            refresher.shutdown();
+            try {
+                refresher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while stopping the index refresher");
+            }
+        }
+        cursorSearchers.close();
+        if (searcherManager != null) {
+            searcherManager.close();
+        }
+        if (shardWriters != null) {
+            for (IndexWriter shardWriter : shardWriters) {
+                shardWriter.close();
+            }
+        }
+        if (searchExecutor != null) {
+            searchExecutor.shutdown();
         }
-        if (indexSearcher != null) {
-            indexSearcher.getIndexReader().close();
+        if (shardExecutor != null) {
+            shardExecutor.shutdown();
+        }
+        chunkProducers.shutdown();
+    }
+    
+    private static final class ResultCacheKey {
+        private final String query;
+        private final int maxResults;
+        private final long readerVersion;
+        
+        ResultCacheKey(String query, int maxResults, long readerVersion) {
+            this.query = query;
+            this.maxResults = maxResults;
+            this.readerVersion = readerVersion;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ResultCacheKey)) {
+                return false;
+            }
+            ResultCacheKey other = (ResultCacheKey) o;
+            return maxResults == other.maxResults && readerVersion == other.readerVersion && query.equals(other.query);
+        }
+        
+        @Override
+        public int hashCode() {
+            int hash = query.hashCode();
+            hash = 31 * hash + maxResults;
+            return 31 * hash + (int) (readerVersion ^ (readerVersion >>> 32));
         }
     }
 } 
\ No newline at end of file
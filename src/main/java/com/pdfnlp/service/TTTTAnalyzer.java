@@ -0,0 +1,36 @@
+package com.pdfnlp.service;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+
+/**
+ * Lucene Analyzer producing the same token sequence as OpenNLP8TTTTProcessor.analyzeText
+ * (lower-cased, as StandardAnalyzer did when the joined string was re-tokenized), but
+ * streaming tokens straight into the index without building an intermediate String.
+ *
+ * Chain: TTTTTokenizer (TTTT/ASCII letter runs) -> TTTTMorphemeFilter (particle stripping,
+ * compound detection, stop word and particle filtering) -> LowerCaseFilter.
+ * Intended for the processedContent field through a PerFieldAnalyzerWrapper.
+ */
+public class TTTTAnalyzer extends Analyzer {
+    private final OpenNLP8TTTTProcessor processor;
+    
+    public TTTTAnalyzer(OpenNLP8TTTTProcessor processor) {
+        this.processor = processor;
+    }
+    
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName) {
+        Tokenizer source = new TTTTTokenizer();
+        TokenStream result = new TTTTMorphemeFilter(source, processor);
+        result = new LowerCaseFilter(result);
+        return new TokenStreamComponents(source, result);
+    }
+    
+    @Override
+    protected TokenStream normalize(String fieldName, TokenStream in) {
+        return new LowerCaseFilter(in);
+    }
+}
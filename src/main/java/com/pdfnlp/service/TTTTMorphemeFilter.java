@@ -0,0 +1,63 @@
+package com.pdfnlp.service;
+
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Expands TTTT tokens into base form, compounds and original word, and drops tokens that
+ * analyzeText filters out. Every emitted token keeps the offsets of its source token and
+ * takes its own position, matching the order of analyzeText's output.
+ */
+final class TTTTMorphemeFilter extends TokenFilter {
+    private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
+    private final OpenNLP8TTTTProcessor processor;
+    private final List<String> morphemes = new ArrayList<String>();
+    private int nextMorpheme;
+    private State sourceState;
+    
+    TTTTMorphemeFilter(TokenStream input, OpenNLP8TTTTProcessor processor) {
+        super(input);
+        this.processor = processor;
+    }
+    
+    @Override
+    public boolean incrementToken() throws IOException {
+        while (true) {
+            if (nextMorpheme < morphemes.size()) {
+                restoreState(sourceState);
+                termAtt.setEmpty().append(morphemes.get(nextMorpheme++));
+                return true;
+            }
+            
+            if (!input.incrementToken()) {
+                return false;
+            }
+            
+            if (!OpenNLP8TTTTProcessor.containsTTTT(termAtt.buffer(), termAtt.length())) {
+                // Non-TTTT tokens can be neither stop words nor particles
+                if (termAtt.length() > 1) {
+                    return true;
+                }
+                continue;
+            }
+            
+            morphemes.clear();
+            nextMorpheme = 0;
+            processor.expandTTTTWord(termAtt.toString(), morphemes);
+            sourceState = captureState();
+        }
+    }
+    
+    @Override
+    public void reset() throws IOException {
+        super.reset();
+        morphemes.clear();
+        nextMorpheme = 0;
+        sourceState = null;
+    }
+}
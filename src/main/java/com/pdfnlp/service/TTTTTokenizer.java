@@ -0,0 +1,22 @@
+package com.pdfnlp.service;
+
+import org.apache.lucene.analysis.util.CharTokenizer;
+
+/**
+ * Emits maximal runs of TTTT syllables and ASCII letters. These are exactly the tokens of
+ * smartPreprocess + OpenNLP tokenization that can survive analyzeText's filter: digit and
+ * punctuation tokens are always dropped there, so they are not produced at all here.
+ */
+final class TTTTTokenizer extends CharTokenizer {
+    // Large enough that a 1000-char chunk never gets a letter run split in two
+    private static final int MAX_TOKEN_LENGTH = 4096;
+    
+    TTTTTokenizer() {
+        super(DEFAULT_TOKEN_ATTRIBUTE_FACTORY, MAX_TOKEN_LENGTH);
+    }
+    
+    @Override
+    protected boolean isTokenChar(int c) {
+        return OpenNLP8TTTTProcessor.isTTTTChar(c) || OpenNLP8TTTTProcessor.isAsciiLetter(c);
+    }
+}
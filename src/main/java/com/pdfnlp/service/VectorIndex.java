@@ -0,0 +1,219 @@
+package com.pdfnlp.service;
+
+import org.apache.lucene.analysis.Analyzer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embeddings of the indexed chunks in an HNSW graph, built offline from the stored chunk
+ * texts and saved next to the Lucene index. Chunks are identified by file path, page and
+ * chunk index, like search hits after the index has changed; chunks indexed after the
+ * build are only found by lexical search until the next build.
+ *
+ * Memory is dominated by the vectors: 4 bytes per dimension and chunk, plus up to
+ * 2 * maxConnections links per chunk on the bottom layer of the graph.
+ */
+public class VectorIndex {
+    private static final int MAGIC = 0x50564543;
+    private static final int FORMAT_VERSION = 1;
+    
+    private final HashingEmbedder embedder;
+    private final HnswGraph graph;
+    private final String[] filePaths;
+    // Per graph node
+    private final int[] fileOrdinals;
+    private final int[] pageNumbers;
+    private final int[] chunkIndexes;
+    
+    private VectorIndex(HashingEmbedder embedder, HnswGraph graph, String[] filePaths,
+                        int[] fileOrdinals, int[] pageNumbers, int[] chunkIndexes) {
+        this.embedder = embedder;
+        this.graph = graph;
+        this.filePaths = filePaths;
+        this.fileOrdinals = fileOrdinals;
+        this.pageNumbers = pageNumbers;
+        this.chunkIndexes = chunkIndexes;
+    }
+    
+    /**
+     * @param ef width of the graph search, at least k
+     * @return up to k chunks, most similar to the query first; none if the query has no
+     *         words or trigrams in common with the chunks the embedding was fitted on
+     */
+    public List<Match> search(String query, int k, int ef) throws IOException {
+        float[] embedding = embedder.embed(query);
+        if (embedding[0] == 0 && isZero(embedding)) {
+            return new ArrayList<Match>();
+        }
+        HnswGraph.Neighbours neighbours = graph.search(embedding, k, ef);
+        List<Match> matches = new ArrayList<Match>(neighbours.size());
+        for (int i = 0; i < neighbours.size(); i++) {
+            int node = neighbours.node(i);
+            matches.add(new Match(filePaths[fileOrdinals[node]], pageNumbers[node], chunkIndexes[node], neighbours.score(i)));
+        }
+        return matches;
+    }
+    
+    private static boolean isZero(float[] vector) {
+        for (float value : vector) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public int size() {
+        return graph.size();
+    }
+    
+    /**
+     * Writes to a temporary file and atomically replaces the given file with it
+     */
+    public void save(File file) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            embedder.writeTo(out);
+            out.writeInt(filePaths.length);
+            for (String filePath : filePaths) {
+                out.writeUTF(filePath);
+            }
+            out.writeInt(graph.size());
+            for (int node = 0; node < graph.size(); node++) {
+                out.writeInt(fileOrdinals[node]);
+                out.writeInt(pageNumbers[node]);
+                out.writeInt(chunkIndexes[node]);
+            }
+            graph.writeTo(out);
+        } finally {
+            out.close();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * @param analyzer analyzer and field the embedder was fitted with
+     */
+    public static VectorIndex load(File file, Analyzer analyzer, String field) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a vector index: " + file);
+            }
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported vector index version " + version + ": " + file);
+            }
+            HashingEmbedder embedder = HashingEmbedder.readFrom(in, analyzer, field);
+            String[] filePaths = new String[in.readInt()];
+            for (int i = 0; i < filePaths.length; i++) {
+                filePaths[i] = in.readUTF();
+            }
+            int nodes = in.readInt();
+            int[] fileOrdinals = new int[nodes];
+            int[] pageNumbers = new int[nodes];
+            int[] chunkIndexes = new int[nodes];
+            for (int node = 0; node < nodes; node++) {
+                fileOrdinals[node] = in.readInt();
+                pageNumbers[node] = in.readInt();
+                chunkIndexes[node] = in.readInt();
+            }
+            HnswGraph graph = HnswGraph.readFrom(in);
+            return new VectorIndex(embedder, graph, filePaths, fileOrdinals, pageNumbers, chunkIndexes);
+        } finally {
+            in.close();
+        }
+    }
+    
+    /**
+     * Embeds chunks and links them into the graph one at a time
+     */
+    public static class Builder {
+        private final HashingEmbedder embedder;
+        private final HnswGraph graph;
+        private final Map<String, Integer> fileOrdinals = new HashMap<String, Integer>();
+        private final List<String> filePaths = new ArrayList<String>();
+        private int[] nodeFiles = new int[1024];
+        private int[] pageNumbers = new int[1024];
+        private int[] chunkIndexes = new int[1024];
+        
+        public Builder(HashingEmbedder embedder, int maxConnections, int beamWidth) {
+            this.embedder = embedder;
+            this.graph = new HnswGraph(embedder.getDimension(), maxConnections, beamWidth);
+        }
+        
+        public void add(String filePath, int pageNumber, int chunkIndex, String text) throws IOException {
+            int node = graph.add(embedder.embed(text));
+            if (node == nodeFiles.length) {
+                nodeFiles = Arrays.copyOf(nodeFiles, node * 2);
+                pageNumbers = Arrays.copyOf(pageNumbers, node * 2);
+                chunkIndexes = Arrays.copyOf(chunkIndexes, node * 2);
+            }
+            Integer fileOrdinal = fileOrdinals.get(filePath);
+            if (fileOrdinal == null) {
+                fileOrdinal = filePaths.size();
+                fileOrdinals.put(filePath, fileOrdinal);
+                filePaths.add(filePath);
+            }
+            nodeFiles[node] = fileOrdinal;
+            pageNumbers[node] = pageNumber;
+            chunkIndexes[node] = chunkIndex;
+        }
+        
+        public VectorIndex build() {
+            int size = graph.size();
+            return new VectorIndex(embedder, graph, filePaths.toArray(new String[0]),
+                Arrays.copyOf(nodeFiles, size), Arrays.copyOf(pageNumbers, size), Arrays.copyOf(chunkIndexes, size));
+        }
+    }
+    
+    /**
+     * A chunk found by vector search and its cosine similarity to the query
+     */
+    public static class Match {
+        private final String filePath;
+        private final int pageNumber;
+        private final int chunkIndex;
+        private final float similarity;
+        
+        Match(String filePath, int pageNumber, int chunkIndex, float similarity) {
+            this.filePath = filePath;
+            this.pageNumber = pageNumber;
+            this.chunkIndex = chunkIndex;
+            this.similarity = similarity;
+        }
+        
+        public String getFilePath() {
+            return filePath;
+        }
+        
+        public int getPageNumber() {
+            return pageNumber;
+        }
+        
+        public int getChunkIndex() {
+            return chunkIndex;
+        }
+        
+        public float getSimilarity() {
+            return similarity;
+        }
+    }
+}
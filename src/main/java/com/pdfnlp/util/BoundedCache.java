@@ -0,0 +1,116 @@
+package com.pdfnlp.util;
+
+import com.pdfnlp.model.CacheStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded, thread-safe LRU cache with hit/miss/eviction counters.
+ * Keys are spread over independently locked LRU segments so concurrent readers rarely
+ * contend; eviction is least-recently-used per segment. A capacity of 0 disables caching.
+ */
+public class BoundedCache<K, V> {
+    private static final int DEFAULT_SEGMENTS = 16;
+    
+    private final Segment<K, V>[] segments;
+    private final int capacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    
+    public BoundedCache(int capacity) {
+        this(capacity, DEFAULT_SEGMENTS);
+    }
+    
+    @SuppressWarnings("unchecked")
+    public BoundedCache(int capacity, int segmentCount) {
+        this.capacity = Math.max(0, capacity);
+        int count = this.capacity == 0 ? 0 : Math.max(1, Math.min(segmentCount, this.capacity));
+        this.segments = (Segment<K, V>[]) new Segment<?, ?>[count];
+        for (int i = 0; i < count; i++) {
+            // Spread the remainder so the segment sizes add up to the capacity
+            int segmentCapacity = this.capacity / count + (i < this.capacity % count ? 1 : 0);
+            segments[i] = new Segment<K, V>(segmentCapacity, evictions);
+        }
+    }
+    
+    public V get(K key) {
+        if (segments.length == 0) {
+            misses.increment();
+            return null;
+        }
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+    
+    public void put(K key, V value) {
+        if (segments.length == 0) {
+            return;
+        }
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+    
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+    
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+    
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size(), capacity);
+    }
+    
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[(hash & 0x7fffffff) % segments.length];
+    }
+    
+    private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+        
+        private final int maxSize;
+        private final LongAdder evictions;
+        
+        Segment(int maxSize, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.evictions = evictions;
+        }
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.pdfnlp.util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic event counter, cheap to update from many threads
+ */
+public class Counter implements CounterMXBean {
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    
+    Counter(String name) {
+        this.name = name;
+    }
+    
+    public void increment() {
+        count.increment();
+    }
+    
+    public void add(long amount) {
+        count.add(amount);
+    }
+    
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+    
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,5 @@
+package com.pdfnlp.util;
+
+public interface CounterMXBean {
+    long getCount();
+}
@@ -0,0 +1,59 @@
+package com.pdfnlp.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 helpers for content-addressed bookkeeping (index manifest, caches)
+ */
+public final class Hashing {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    private Hashing() {
+    }
+    
+    public static String sha256Hex(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            return sha256Hex(input);
+        } finally {
+            input.close();
+        }
+    }
+    
+    public static String sha256Hex(InputStream input) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+    
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+    
+    /**
+     * New SHA-256 digest for callers hashing structured data piece by piece
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.pdfnlp.util;
+
+import com.pdfnlp.model.LatencySnapshot;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram in the style of HdrHistogram: values below 32ns get exact
+ * buckets, above that every power of two is split into 16 linear sub-buckets, so any
+ * recorded value is reported within about 6% of its true size. Recording is a
+ * few atomic adds, cheap enough for per-page and per-document timing.
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+    private static final int LINEAR_BUCKETS = 32;
+    private static final int SUB_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        totalNanos.add(value);
+
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * Records the time elapsed since a System.nanoTime() reading
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        // Shift that leaves the top 5 bits, i.e. a mantissa in [16, 32)
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int mantissa = (int) (value >>> shift);
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (mantissa - SUB_BUCKETS);
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long mantissa = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * Percentiles are read from the bucket counts without locking, so a snapshot taken
+     * while values are being recorded may be off by the in-flight recordings
+     */
+    public LatencySnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        long max = maxNanos.get();
+        return new LatencySnapshot(name, total,
+            total > 0 ? totalNanos.sum() / (double) total : 0.0,
+            percentile(counts, total, 0.50, max),
+            percentile(counts, total, 0.90, max),
+            percentile(counts, total, 0.99, max),
+            percentile(counts, total, 0.999, max),
+            max);
+    }
+
+    private static long percentile(long[] counts, long total, double quantile, long max) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return snapshot().getMeanMillis();
+    }
+
+    @Override
+    public double getP50Millis() {
+        return snapshot().getP50Millis();
+    }
+
+    @Override
+    public double getP90Millis() {
+        return snapshot().getP90Millis();
+    }
+
+    @Override
+    public double getP99Millis() {
+        return snapshot().getP99Millis();
+    }
+
+    @Override
+    public double getP999Millis() {
+        return snapshot().getP999Millis();
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return maxNanos.get() / 1e6;
+    }
+}
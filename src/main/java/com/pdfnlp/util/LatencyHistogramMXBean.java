@@ -0,0 +1,20 @@
+package com.pdfnlp.util;
+
+/**
+ * JMX view of a LatencyHistogram; all times in milliseconds
+ */
+public interface LatencyHistogramMXBean {
+    long getCount();
+    
+    double getMeanMillis();
+    
+    double getP50Millis();
+    
+    double getP90Millis();
+    
+    double getP99Millis();
+    
+    double getP999Millis();
+    
+    double getMaxMillis();
+}
@@ -0,0 +1,113 @@
+package com.pdfnlp.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide registry of pipeline counters and latency histograms. Components look up
+ * their metrics once, like their loggers, and every metric is registered as an MXBean
+ * under "com.pdfnlp:type=...,name=...". startReporter() additionally dumps all metrics
+ * to the "com.pdfnlp.metrics" logger at a fixed interval.
+ */
+public final class Metrics {
+    private static final Logger logger = LoggerFactory.getLogger(Metrics.class);
+    private static final Logger reportLogger = LoggerFactory.getLogger("com.pdfnlp.metrics");
+    private static final String JMX_DOMAIN = "com.pdfnlp";
+
+    // Sorted so dumps list related stages ("ingest.*", "search.*") together
+    private static final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<String, LatencyHistogram>();
+    private static final ConcurrentMap<String, Counter> counters = new ConcurrentSkipListMap<String, Counter>();
+
+    private static ScheduledExecutorService reporter;
+
+    private Metrics() {
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram(name);
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+                register("LatencyHistogram", name, created);
+            }
+        }
+        return histogram;
+    }
+
+    public static Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter(name);
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+                register("Counter", name, created);
+            }
+        }
+        return counter;
+    }
+
+    private static void register(String type, String name, Object mxBean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(mxBean, objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("Could not register metric {} with JMX", name, e);
+        }
+    }
+
+    /**
+     * Multi-line dump of every counter and every histogram with at least one recording
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder("Pipeline metrics:");
+        for (Counter counter : counters.values()) {
+            report.append(String.format("\n  %-24s %d", counter.getName(), counter.getCount()));
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            if (histogram.getCount() > 0) {
+                report.append("\n  ").append(histogram.snapshot());
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Logs report() every periodSeconds until stopReporter(); 0 or less does nothing
+     */
+    public static synchronized void startReporter(long periodSeconds) {
+        if (periodSeconds <= 0 || reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("metrics-reporter"));
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                reportLogger.info(report());
+            }
+        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        logger.info("Metrics reporter started, dumping every {}s", periodSeconds);
+    }
+
+    public static synchronized void stopReporter() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+}
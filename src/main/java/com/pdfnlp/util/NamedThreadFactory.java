@@ -0,0 +1,24 @@
+package com.pdfnlp.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory producing daemon threads named "prefix-N"
+ * so worker pools are recognizable in thread dumps and log lines
+ */
+public class NamedThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger(1);
+
+    public NamedThreadFactory(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, prefix + "-" + counter.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,171 @@
+package com.pdfnlp.util;
+
+import java.util.Arrays;
+
+/**
+ * Counts occurrences of terms and remembers where each term first occurred, in primitive
+ * arrays instead of a map of boxed values. Terms are numbered 0..size()-1 in order of
+ * their first occurrence, so callers can keep per-term values in plain arrays indexed
+ * the same way. Open addressing with linear probing; not thread-safe.
+ */
+public final class TermCounts {
+    private static final int MIN_TABLE_SIZE = 16;
+    
+    private String[] terms;
+    private int[] counts;
+    private int[] firstPositions;
+    private int size;
+    // Term ordinal + 1 per hash slot, 0 for a free slot; at most half full
+    private int[] table;
+    private int mask;
+    
+    public TermCounts(int expectedTerms) {
+        int tableSize = Math.max(MIN_TABLE_SIZE, Integer.highestOneBit(Math.max(1, expectedTerms) * 2 - 1) << 1);
+        this.table = new int[tableSize];
+        this.mask = tableSize - 1;
+        this.terms = new String[tableSize / 2];
+        this.counts = new int[tableSize / 2];
+        this.firstPositions = new int[tableSize / 2];
+    }
+    
+    /**
+     * Counts one occurrence of the term; the position is kept if it is the first one
+     *
+     * @return ordinal of the term
+     */
+    public int add(String term, int position) {
+        int slot = mix(term.hashCode()) & mask;
+        while (table[slot] != 0) {
+            int ordinal = table[slot] - 1;
+            if (terms[ordinal].equals(term)) {
+                counts[ordinal]++;
+                return ordinal;
+            }
+            slot = (slot + 1) & mask;
+        }
+        
+        int ordinal = size++;
+        if (ordinal == terms.length) {
+            terms = Arrays.copyOf(terms, ordinal * 2);
+            counts = Arrays.copyOf(counts, ordinal * 2);
+            firstPositions = Arrays.copyOf(firstPositions, ordinal * 2);
+        }
+        terms[ordinal] = term;
+        counts[ordinal] = 1;
+        firstPositions[ordinal] = position;
+        table[slot] = ordinal + 1;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return ordinal;
+    }
+    
+    /**
+     * @return ordinal of the term, or -1 if it was never added
+     */
+    public int ordinal(String term) {
+        int slot = mix(term.hashCode()) & mask;
+        while (table[slot] != 0) {
+            int ordinal = table[slot] - 1;
+            if (terms[ordinal].equals(term)) {
+                return ordinal;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+    
+    private void rehash() {
+        int[] rehashed = new int[table.length * 2];
+        int newMask = rehashed.length - 1;
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            int slot = mix(terms[ordinal].hashCode()) & newMask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & newMask;
+            }
+            rehashed[slot] = ordinal + 1;
+        }
+        table = rehashed;
+        mask = newMask;
+    }
+    
+    // String hashes of similar terms differ mostly in the low bits; spread them over the table
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * The k best scored terms, best first; equal scores go to the term that occurred first.
+     * A min-heap holds the k best ordinals seen so far with the weakest at the root, so each
+     * further term costs one comparison unless it displaces the root.
+     *
+     * @param scores score per term ordinal
+     * @return ordinals of at most k terms
+     */
+    public int[] top(double[] scores, int k) {
+        int[] heap = new int[Math.max(0, Math.min(k, size))];
+        int heapSize = heap.length;
+        for (int ordinal = 0; ordinal < heapSize; ordinal++) {
+            heap[ordinal] = ordinal;
+        }
+        for (int i = heapSize / 2 - 1; i >= 0; i--) {
+            siftDown(heap, i, heapSize, scores);
+        }
+        for (int ordinal = heapSize; ordinal < size; ordinal++) {
+            if (ranksAbove(ordinal, heap[0], scores)) {
+                heap[0] = ordinal;
+                siftDown(heap, 0, heapSize, scores);
+            }
+        }
+        
+        // Removing the weakest first fills the result from the back
+        int[] top = new int[heapSize];
+        while (heapSize > 0) {
+            top[heapSize - 1] = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, 0, heapSize, scores);
+        }
+        return top;
+    }
+    
+    private static void siftDown(int[] heap, int i, int size, double[] scores) {
+        int ordinal = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && ranksAbove(heap[child], heap[child + 1], scores)) {
+                child++;
+            }
+            if (!ranksAbove(ordinal, heap[child], scores)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = ordinal;
+    }
+    
+    // Higher score first; ordinals follow first occurrence, so ties go to the earlier term
+    private static boolean ranksAbove(int a, int b, double[] scores) {
+        return scores[a] > scores[b] || (scores[a] == scores[b] && a < b);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public String term(int ordinal) {
+        return terms[ordinal];
+    }
+    
+    public int count(int ordinal) {
+        return counts[ordinal];
+    }
+    
+    public int firstPosition(int ordinal) {
+        return firstPositions[ordinal];
+    }
+}
@@ -0,0 +1,168 @@
+package com.pdfnlp.service;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Golden outputs of the regex-based OpenNLP8TTTTProcessor the single-pass implementation
+ * replaced. smartPreprocess and analyzeText must reproduce them exactly. extractKeywords
+ * returns the same keywords; equally scored keywords, which the old implementation left in
+ * HashMap order, are ranked by first occurrence.
+ */
+public class OpenNLP8TTTTProcessorTest {
+    // input, smartPreprocess, analyzeText
+    private static final String[][] GOLDEN = {
+        {"인공지능 기술이 발전하면서 자연어처리 분야에서도 많은 변화가 있었다.",
+            "인공지능 기술이 발전하면서 자연어처리 분야에서도 많은 변화가 있었다.",
+            "인공 지능 인공지능 기술 발전 하면서 발전하면서 자연 어처리 자연어처리 변화 있었다"},
+        {"데이터베이스관리시스템은 대용량데이터를 효율적으로 저장하고 검색한다.",
+            "데이터베이스관리시스템은 대용량데이터를 효율적으로 저장하고 검색한다.",
+            "데이터베이스관리시스템 대용량데이터 효율적으 저장 하고 저장하고 검색 한다 검색한다"},
+        {"Machine learning models, e.g. BERT (2018), changed NLP; 검색엔진에서도 사용된다!",
+            "Machine learning models, e.g. BERT (2018), changed NLP; 검색엔진에서도 사용된다 ",
+            "Machine learning models BERT changed NLP 사용 된다 사용된다"},
+        {"  \t그리고   이것은\n\n테스트입니다...  ",
+            "그리고 이것은 테스트입니다...",
+            "이것 테스 트입니다 트입 니다 테스트입니다"},
+        {"학교에서 학생들이 도서관으로 가서 책을 읽었다. 학생들은 도서관에서 공부했다.",
+            "학교에서 학생들이 도서관으로 가서 책을 읽었다. 학생들은 도서관에서 공부했다.",
+            "학교 학생들 도서관으 가서 읽었다 학생들 도서관 공부 했다 공부했다"},
+        {"Version 2.0 released on 2024-01-15: see https://example.com/docs?id=42 #release",
+            "Version 2.0 released on 2024-01-15: see https: example.com docs id 42 release",
+            "Version released on see https example com docs id release"},
+        {"서울특별시 강남구 테헤란로 123번길 45 (역삼동) 전화: 02-555-1234",
+            "서울특별시 강남구 테헤란로 123번길 45 (역삼동) 전화: 02-555-1234",
+            "서울 특별시 서울특별시 강남구 테헤란 번길 역삼동 전화"},
+        {"Lucene의 역색인 구조는 검색속도를 크게 향상시킨다. 역색인은 단어별로 문서목록을 저장한다.",
+            "Lucene의 역색인 구조는 검색속도를 크게 향상시킨다. 역색인은 단어별로 문서목록을 저장한다.",
+            "Lucene 역색인 구조 크게 향상 시킨다 향상시킨다 역색인 단어별 문서목록 저장 한다 저장한다"},
+        {"a b c 1 2 3 ! ? x",
+            "a b c 1 2 3 x",
+            ""},
+        {"정보검색시스템정보검색시스템 정보검색 시스템",
+            "정보검색시스템정보검색시스템 정보검색 시스템",
+            "정보 검색시스템정보검색시스템 검색 시스템정보검색시스템 시스 템정보검색시스템 템정 보검색시스템 보검 "
+                + "색시스템 색시 스템 정보검색시스템정보검색시스템 정보 검색 정보검색 시스템"},
+        {"The quick brown fox jumps over the lazy dog. The dog sleeps.",
+            "The quick brown fox jumps over the lazy dog. The dog sleeps.",
+            "The quick brown fox jumps over the lazy dog The dog sleeps"},
+        {"한국어 형태소분석기와 영어 tokenizer를 함께 사용하는 하이브리드 검색 시스템 설계",
+            "한국어 형태소분석기와 영어 tokenizer를 함께 사용하는 하이브리드 검색 시스템 설계",
+            "한국어 형태소분석기 영어 tokenizer 사용하 하이브 리드 하이브리드 검색 시스템 설계"},
+        {"【주의】 “따옴표” ‘작은따옴표’ ★특수문자★ ©2023 ™",
+            " 주의 따옴표 작은따옴표 특수문자 2023 ",
+            "따옴표 작은따 옴표 작은따옴표 특수 문자 특수문자"},
+        {"",
+            "",
+            ""},
+    };
+    
+    // extractKeywords of the GOLDEN inputs, in the same order
+    private static final String[][] GOLDEN_KEYWORDS = {
+        {"발전하면서", "자연어처리", "인공지능", "하면서", "어처리", "있었다", "인공", "지능", "기술", "발전", "자연", "변화"},
+        {"데이터베이스관리시스템", "대용량데이터", "효율적으", "저장하고", "검색한다", "저장", "하고", "검색", "한다"},
+        {"Machine", "learning", "models", "사용된다", "changed", "BERT", "NLP", "사용", "된다"},
+        {"테스트입니다", "트입니다", "이것", "테스", "트입", "니다"},
+        {"학생들", "도서관으", "공부했다", "읽었다", "도서관", "학교", "가서", "공부", "했다"},
+        {"Version", "released", "https", "example", "release", "docs", "see", "com", "on", "id"},
+        {"서울특별시", "특별시", "강남구", "테헤란", "역삼동", "서울", "번길", "전화"},
+        {"역색인", "향상시킨다", "Lucene", "문서목록", "저장한다", "시킨다", "단어별", "구조", "크게", "향상", "저장", "한다"},
+        {},
+        {"검색시스템정보검색시스템", "시스템정보검색시스템", "템정보검색시스템", "보검색시스템", "정보검색시스템정보검색시스템",
+            "정보", "검색", "색시스템", "정보검색", "시스템", "시스", "템정", "보검", "색시", "스템"},
+        {"The", "dog", "quick", "brown", "jumps", "sleeps", "over", "lazy", "fox", "the"},
+        {"형태소분석기", "하이브리드", "tokenizer", "한국어", "사용하", "하이브", "시스템", "영어", "리드", "검색", "설계"},
+        {"작은따옴표", "특수문자", "따옴표", "작은따", "옴표", "특수", "문자"},
+        {},
+    };
+    
+    private static final String RANDOM_ALPHABET =
+        "가나다라마바사아자차카타파하학생도서관정보검색시스템은는이가을를에서로의 \t\n\r\u000b\f\u0001 "
+            + "abcXYZ0123456789()[]{}.,;:-!?\"'/#@【“★é";
+    
+    private final OpenNLP8TTTTProcessor processor = new OpenNLP8TTTTProcessor();
+    
+    @Test
+    public void smartPreprocessMatchesGoldenOutput() {
+        for (String[] golden : GOLDEN) {
+            assertEquals(golden[0], golden[1], processor.smartPreprocess(golden[0]));
+        }
+    }
+    
+    @Test
+    public void analyzeTextMatchesGoldenOutput() {
+        for (String[] golden : GOLDEN) {
+            assertEquals(golden[0], golden[2], processor.analyzeText(golden[0]));
+        }
+    }
+    
+    @Test
+    public void extractKeywordsMatchesGoldenOutput() {
+        for (int i = 0; i < GOLDEN.length; i++) {
+            assertEquals(GOLDEN[i][0], Arrays.asList(GOLDEN_KEYWORDS[i]), processor.extractKeywords(GOLDEN[i][0]));
+        }
+    }
+    
+    @Test
+    public void smartPreprocessMatchesRegexReferenceOnRandomText() {
+        Random random = new Random(42L);
+        for (int i = 0; i < 20000; i++) {
+            String text = randomText(random, random.nextInt(40));
+            assertEquals(text, regexPreprocess(text), processor.smartPreprocess(text));
+        }
+    }
+    
+    @Test
+    public void wordCacheDoesNotChangeOutput() {
+        OpenNLP8TTTTProcessor uncached = new OpenNLP8TTTTProcessor(0);
+        for (String[] golden : GOLDEN) {
+            // Twice, so the second call of the cached processor is answered from its cache
+            for (int i = 0; i < 2; i++) {
+                assertEquals(golden[2], uncached.analyzeText(golden[0]));
+                assertEquals(golden[2], processor.analyzeText(golden[0]));
+            }
+        }
+    }
+    
+    @Test
+    public void nullAndBlankTextYieldNothing() {
+        assertEquals("", processor.smartPreprocess(null));
+        assertEquals("", processor.analyzeText(null));
+        assertEquals("", processor.analyzeText(" \t\n "));
+        assertTrue(processor.extractKeywords(null).isEmpty());
+        assertTrue(processor.extractKeywords(" \t\n ").isEmpty());
+    }
+    
+    @Test
+    public void extractKeywordsKeepsAtMost25() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("keyword").append((char) ('a' + i % 26)).append((char) ('a' + i / 26)).append(' ');
+        }
+        List<String> keywords = processor.extractKeywords(text.toString());
+        assertEquals(25, keywords.size());
+    }
+    
+    /**
+     * smartPreprocess as it was written before the single-pass rewrite
+     */
+    private static String regexPreprocess(String text) {
+        text = text.replaceAll("\\s+", " ").trim();
+        text = text.replaceAll("[^가-힣a-zA-Z0-9\\s()\\[\\]{}.,;:-]", " ");
+        return text.replaceAll("\\s+", " ");
+    }
+    
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(RANDOM_ALPHABET.charAt(random.nextInt(RANDOM_ALPHABET.length())));
+        }
+        return text.toString();
+    }
+}
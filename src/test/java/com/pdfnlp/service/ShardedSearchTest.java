@@ -0,0 +1,175 @@
+package com.pdfnlp.service;
+
+import com.pdfnlp.model.CacheStats;
+import com.pdfnlp.model.SearchCursor;
+import com.pdfnlp.model.SearchHit;
+import com.pdfnlp.model.SearchPage;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Search over an index of several shards must behave like search over one: cursor pages
+ * line up with a single search, hits stay resolvable after a refresh renumbers the shards,
+ * and the result cache is invalidated by a change in any shard
+ */
+public class ShardedSearchTest {
+    private static final int SHARDS = 3;
+    private static final String QUERY = "retrieval";
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private SimplePDFSearchService service;
+    private File pdfDir;
+    
+    @Before
+    public void setUp() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("pdfnlp.index.shards", String.valueOf(SHARDS));
+        // Refreshed by indexPDF/indexDirectory only, so reader versions change when the test says so
+        IndexConfig config = IndexConfig.fromProperties(properties)
+            .withIndexDir(new File(folder.getRoot(), "index"))
+            .withSearch(600, 0);
+        service = new SimplePDFSearchService(config);
+        
+        pdfDir = folder.newFolder("pdfs");
+        Set<Integer> shards = new HashSet<Integer>();
+        for (int i = 0; i < 6; i++) {
+            String name = "doc-" + i + ".pdf";
+            writePdf(new File(pdfDir, name), i, 3);
+            shards.add(Math.floorMod(name.hashCode(), SHARDS));
+        }
+        assertTrue("test files must span several shards", shards.size() > 1);
+        service.indexDirectory(pdfDir, 1, 0);
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        service.close();
+    }
+    
+    @Test
+    public void cursorPagesMatchSingleSearch() throws IOException {
+        SearchPage all = service.searchHits(QUERY, 0, 1000);
+        assertTrue(all.getHits().size() > 10);
+        
+        List<String> paged = new ArrayList<String>();
+        SearchCursor cursor = null;
+        do {
+            SearchPage page = service.searchAfter(QUERY, cursor, 4);
+            for (SearchHit hit : page.getHits()) {
+                paged.add(key(hit));
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        
+        List<String> single = new ArrayList<String>();
+        for (SearchHit hit : all.getHits()) {
+            single.add(key(hit));
+        }
+        assertEquals(single, paged);
+        assertEquals(paged.size(), new HashSet<String>(paged).size());
+    }
+    
+    @Test
+    public void hitsResolveAfterRefresh() throws IOException {
+        List<SearchHit> hits = service.searchHits(QUERY, 0, 1000).getHits();
+        List<String> contents = new ArrayList<String>();
+        for (SearchHit hit : hits) {
+            contents.add(service.loadContent(hit));
+        }
+        
+        // Chunks added to one shard shift the doc ids of the shards after it
+        for (int i = 6; i < 6 + SHARDS; i++) {
+            File pdf = new File(pdfDir, "doc-" + i + ".pdf");
+            writePdf(pdf, i, 2);
+            service.indexPDF(pdf);
+        }
+        
+        for (int i = 0; i < hits.size(); i++) {
+            assertNotNull(contents.get(i));
+            assertEquals(key(hits.get(i)), contents.get(i), service.loadContent(hits.get(i)));
+        }
+        
+        // A chunk that is gone resolves to nothing rather than to another chunk
+        SearchHit first = hits.get(0);
+        SearchHit missing = new SearchHit(first.getDocId(), first.getReaderVersion(), first.getScore(),
+            first.getFileName(), first.getFilePath(), first.getPageNumber(), 999);
+        assertNull(service.loadContent(missing));
+    }
+    
+    @Test
+    public void resultCacheMissesAfterCommit() throws IOException {
+        CacheStats before = service.getResultCacheStats();
+        service.search(QUERY, 10);
+        service.search(QUERY, 10);
+        CacheStats cached = service.getResultCacheStats();
+        assertEquals(before.getHitCount() + 1, cached.getHitCount());
+        
+        File pdf = new File(pdfDir, "doc-new.pdf");
+        writePdf(pdf, 7, 1);
+        service.indexPDF(pdf);
+        
+        service.search(QUERY, 10);
+        CacheStats after = service.getResultCacheStats();
+        assertEquals(cached.getHitCount(), after.getHitCount());
+        assertEquals(cached.getMissCount() + 1, after.getMissCount());
+    }
+    
+    private static String key(SearchHit hit) {
+        return hit.getFilePath() + "#" + hit.getPageNumber() + "/" + hit.getChunkIndex();
+    }
+    
+    /**
+     * Pages of about 2,500 characters, i.e. several chunks each, mentioning the query term a
+     * varying number of times so that the hits have different scores
+     */
+    private static void writePdf(File file, int fileNumber, int pageCount) throws IOException {
+        PDDocument document = new PDDocument();
+        try {
+            for (int pageNum = 1; pageNum <= pageCount; pageNum++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                PDPageContentStream content = new PDPageContentStream(document, page);
+                try {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 9);
+                    content.setLeading(11);
+                    content.newLineAtOffset(40, 750);
+                    for (int line = 0; line < 40; line++) {
+                        String topic = (fileNumber + pageNum + line) % 4 == 0 ? "retrieval" : "storage";
+                        content.showText("Document " + fileNumber + " page " + pageNum + " line " + line
+                            + ": " + topic + " systems rank results by relevance.");
+                        content.newLine();
+                    }
+                    content.endText();
+                } finally {
+                    content.close();
+                }
+            }
+            document.save(file);
+        } finally {
+            document.close();
+        }
+    }
+}
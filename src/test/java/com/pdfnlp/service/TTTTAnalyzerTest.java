@@ -0,0 +1,139 @@
+package com.pdfnlp.service;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * TTTTAnalyzer must index processedContent exactly as StandardAnalyzer did when it
+ * re-tokenized the output of OpenNLP8TTTTProcessor.analyzeText
+ */
+public class TTTTAnalyzerTest {
+    private static final String[] SAMPLES = {
+        "인공지능 기술이 발전하면서 자연어처리 분야에서도 많은 변화가 있었다.",
+        "데이터베이스관리시스템은 대용량데이터를 효율적으로 저장하고 검색한다.",
+        "Machine learning models, e.g. BERT (2018), changed NLP; 검색엔진에서도 사용된다!",
+        "  \t그리고   이것은\n\n테스트입니다...  ",
+        "Version 2.0 released on 2024-01-15: see https://example.com/docs?id=42 #release",
+        "서울특별시 강남구 테헤란로 123번길 45 (역삼동) 전화: 02-555-1234",
+        "Lucene의 역색인 구조는 검색속도를 크게 향상시킨다.",
+        "정보검색시스템정보검색시스템 정보검색 시스템",
+        "【주의】 “따옴표” ‘작은따옴표’ ★특수문자★ ©2023 ™",
+        "a b c 1 2 3 ! ? x",
+        "",
+    };
+    
+    private static final String[] RANDOM_WORDS = {
+        "학교", "학생들", "도서관", "정보검색", "시스템", "데이터베이스", "인공지능", "자연어처리", "형태소분석기",
+        "그리고", "또한", "경우", "이", "그", "것", "수", "하다", "있다",
+        "Lucene", "index", "search", "BERT", "x", "A", "tokenizer", "MixedCase",
+        "123", "2.0", "3rd", "(", ")", "...", "-", ":", "#", "★", "“", "é", "\t", "\n"
+    };
+    
+    private static final String[] PARTICLES = {"", "", "", "이", "가", "을", "를", "에서", "으로", "의", "은", "는", "까지", "처럼"};
+    
+    private final OpenNLP8TTTTProcessor processor = new OpenNLP8TTTTProcessor();
+    private final Analyzer ttttAnalyzer = new TTTTAnalyzer(processor);
+    private final Analyzer standardAnalyzer = new StandardAnalyzer();
+    
+    @Test
+    public void tokensMatchReanalyzedProcessorOutput() throws IOException {
+        for (String sample : SAMPLES) {
+            assertEquals(sample, expectedTokens(sample), tokens(ttttAnalyzer, sample));
+        }
+    }
+    
+    @Test
+    public void tokensMatchReanalyzedProcessorOutputOnRandomText() throws IOException {
+        Random random = new Random(42L);
+        for (int i = 0; i < 5000; i++) {
+            String text = randomText(random, random.nextInt(30));
+            assertEquals(text, expectedTokens(text), tokens(ttttAnalyzer, text));
+        }
+    }
+    
+    @Test
+    public void tokensAreLowerCasedProcessorTokens() throws IOException {
+        for (String sample : SAMPLES) {
+            String analyzed = processor.analyzeText(sample).toLowerCase(Locale.ROOT);
+            List<String> expected = analyzed.isEmpty() ? new ArrayList<String>() : Arrays.asList(analyzed.split(" "));
+            assertEquals(sample, expected, tokens(ttttAnalyzer, sample));
+        }
+    }
+    
+    @Test
+    public void offsetsPointAtTheSourceWord() throws IOException {
+        String text = "학생들이 도서관에서 Lucene 공부했다";
+        TokenStream stream = ttttAnalyzer.tokenStream("processedContent", text);
+        CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+        OffsetAttribute offset = stream.addAttribute(OffsetAttribute.class);
+        try {
+            stream.reset();
+            while (stream.incrementToken()) {
+                String source = text.substring(offset.startOffset(), offset.endOffset()).toLowerCase(Locale.ROOT);
+                assertTrue(term + " not in " + source, source.contains(term.toString()));
+            }
+            stream.end();
+        } finally {
+            stream.close();
+        }
+    }
+    
+    @Test
+    public void processedContentIsAnalyzedByTTTTAnalyzer() throws IOException {
+        Analyzer fieldAnalyzer = SimplePDFSearchService.createAnalyzer(processor);
+        for (String sample : SAMPLES) {
+            assertEquals(sample, tokens(ttttAnalyzer, sample), tokens(fieldAnalyzer, "processedContent", sample));
+            assertEquals(sample, tokens(standardAnalyzer, sample), tokens(fieldAnalyzer, "content", sample));
+        }
+    }
+    
+    private List<String> expectedTokens(String text) throws IOException {
+        return tokens(standardAnalyzer, processor.analyzeText(text));
+    }
+    
+    private static List<String> tokens(Analyzer analyzer, String text) throws IOException {
+        return tokens(analyzer, "processedContent", text);
+    }
+    
+    private static List<String> tokens(Analyzer analyzer, String field, String text) throws IOException {
+        List<String> tokens = new ArrayList<String>();
+        TokenStream stream = analyzer.tokenStream(field, text);
+        CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+        try {
+            stream.reset();
+            while (stream.incrementToken()) {
+                tokens.add(term.toString());
+            }
+            stream.end();
+        } finally {
+            stream.close();
+        }
+        return tokens;
+    }
+    
+    private static String randomText(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            text.append(RANDOM_WORDS[random.nextInt(RANDOM_WORDS.length)]);
+            text.append(PARTICLES[random.nextInt(PARTICLES.length)]);
+            if (random.nextInt(4) > 0) {
+                text.append(' ');
+            }
+        }
+        return text.toString();
+    }
+}